@@ -0,0 +1,57 @@
+package de.pdbm.janki;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of {@code target/benchmarks.jar}.
+ * <p>
+ *
+ * Accepts the usual JMH command line options. Unless given otherwise, all benchmarks report throughput
+ * together with the allocation rate of the GC profiler, and results are written to {@code target/jmh-result.json}
+ * to compare runs:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                     # all benchmarks
+ * java -jar target/benchmarks.jar Parser -f 1 -wi 2   # some benchmarks, JMH options
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers() 
+				|| commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (commandLine.getBenchModes().isEmpty()) {
+			options.mode(Mode.Throughput);
+			if (!commandLine.getTimeUnit().hasValue()) {
+				options.timeUnit(TimeUnit.MICROSECONDS);
+			}
+		}
+		if (commandLine.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON).result("target/jmh-result.json");
+		}
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,88 @@
+package de.pdbm.janki.core;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotificationListener;
+import de.pdbm.janki.core.notifications.NotificationListener;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+/**
+ * Cost of dispatching a position update depending on the number of listeners.
+ * <p>
+ * 
+ * One third of the listeners are position update listeners, the others listen to transition updates 
+ * and charger info. {@code scan} is the former implementation iterating all listeners with 
+ * {@code instanceof}, {@code table} uses {@link NotificationListeners}.
+ * 
+ * @author bernd
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+	@Param({ "1", "3", "12", "48" })
+	int listenerCount;
+
+	private final Collection<NotificationListener> deque = new ConcurrentLinkedDeque<>();
+
+	private final NotificationListeners table = new NotificationListeners();
+
+	private PositionUpdate positionUpdate;
+
+	@Setup
+	public void setup(Blackhole blackhole) {
+		for (int i = 0; i < listenerCount; i++) {
+			NotificationListener listener;
+			switch (i % 3) {
+			case 0:
+				listener = (PositionUpdateListener) blackhole::consume;
+				break;
+			case 1:
+				listener = (TransitionUpdateListener) blackhole::consume;
+				break;
+			default:
+				listener = (ChargerInfoNotificationListener) blackhole::consume;
+			}
+			deque.add(listener);
+			table.add(listener);
+		}
+		positionUpdate = new PositionUpdate(null, 1, RoadPiece.STRAIGHT, true);
+	}
+
+	@Benchmark
+	public void scan() {
+		for (NotificationListener notificationListener : deque) {
+			if (notificationListener instanceof PositionUpdateListener) {
+				((PositionUpdateListener) notificationListener).onPositionUpdate(positionUpdate);
+			}
+		}
+	}
+
+	@Benchmark
+	public void table() {
+		table.firePositionUpdate(positionUpdate);
+	}
+
+}
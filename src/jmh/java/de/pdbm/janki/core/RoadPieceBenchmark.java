@@ -0,0 +1,45 @@
+package de.pdbm.janki.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup of road pieces by Anki road piece ID, cycling through all known IDs.
+ *
+ * @author bernd
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoadPieceBenchmark {
+
+	private final int[] ids = {33, 34, 36, 39, 40, 48, 51, 17, 18, 20, 23, 24, 27, 10};
+
+	private int index;
+
+	@Benchmark
+	public RoadPiece valueOf() {
+		index = (index + 1) % ids.length;
+		return RoadPiece.valueOf(ids[index]);
+	}
+
+	@Benchmark
+	public RoadPiece forId() {
+		index = (index + 1) % ids.length;
+		return RoadPiece.forId(ids[index]);
+	}
+
+}
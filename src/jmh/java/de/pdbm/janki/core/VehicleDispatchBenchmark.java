@@ -0,0 +1,82 @@
+package de.pdbm.janki.core;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotificationListener;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+/**
+ * Parsing and dispatching of value notifications by {@link Vehicle}, as done for every BLE message,
+ * depending on the number of listeners. One third of the listeners are position update listeners,
+ * the others listen to transition updates and charger info.
+ *
+ * @author bernd
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VehicleDispatchBenchmark {
+
+	@Param({ "1", "3", "12", "48" })
+	int listenerCount;
+
+	private final byte[] positionUpdate = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	private final byte[] transitionUpdate = new byte[] {18, 0x29, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 56, 56};
+
+	private final byte[] chargerInfo = new byte[] {5, 0x3f, 0, 0, 0, 1};
+
+	private Vehicle vehicle;
+
+	@Setup
+	public void setup(Blackhole blackhole) {
+		vehicle = new Vehicle(0x020000000000L, Optional.empty(), null);
+		for (int i = 0; i < listenerCount; i++) {
+			switch (i % 3) {
+			case 0:
+				vehicle.addNotificationListener((PositionUpdateListener) blackhole::consume);
+				break;
+			case 1:
+				vehicle.addNotificationListener((TransitionUpdateListener) blackhole::consume);
+				break;
+			default:
+				vehicle.addNotificationListener((ChargerInfoNotificationListener) blackhole::consume);
+			}
+		}
+	}
+
+	@Benchmark
+	public void positionUpdate() {
+		vehicle.dispatchValueNotification(positionUpdate);
+	}
+
+	@Benchmark
+	public void transitionUpdate() {
+		vehicle.dispatchValueNotification(transitionUpdate);
+	}
+
+	@Benchmark
+	public void chargerInfo() {
+		vehicle.dispatchValueNotification(chargerInfo);
+	}
+
+}
@@ -0,0 +1,64 @@
+package de.pdbm.janki.core.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link Journal#append(long, long, byte[])} for a position update, i.e. the latency added to dispatch.
+ * Four threads emulate the TinyB callback threads of a fleet.
+ *
+ * @author bernd
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class JournalBenchmark {
+
+	private final byte[] positionUpdate = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	private Path directory;
+
+	private Journal journal;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("janki-journal");
+		journal = new Journal(directory, 64 * 1024 * 1024);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void append() {
+		journal.append(System.nanoTime(), 0xE40A2C13315FL, positionUpdate);
+	}
+
+}
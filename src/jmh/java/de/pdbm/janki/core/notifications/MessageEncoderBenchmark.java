@@ -0,0 +1,81 @@
+package de.pdbm.janki.core.notifications;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of a speed message, former stream based implementation vs. {@link Message#speedMessage(short, short)}
+ * vs. {@link MessageEncoder#speed(ByteBuffer, short, short)} into a reused buffer.
+ * <p>
+ *
+ * Run with {@code -prof gc} to see the allocation rate, {@code encoderSpeed} must show 0 B/op.
+ *
+ * @author bernd
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncoderBenchmark {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(MessageEncoder.MAX_SIZE);
+
+	private short speed = 500;
+
+	@Benchmark
+	public byte[] streamSpeed() {
+		return streamSpeedMessage(speed++, (short) 10000);
+	}
+
+	@Benchmark
+	public byte[] messageSpeed() {
+		return Message.speedMessage(speed++, (short) 10000);
+	}
+
+	@Benchmark
+	public ByteBuffer encoderSpeed() {
+		buffer.clear();
+		MessageEncoder.speed(buffer, speed++, (short) 10000);
+		return buffer;
+	}
+
+	@Benchmark
+	public ByteBuffer encoderChangeLane() {
+		buffer.clear();
+		MessageEncoder.changeLane(buffer, (short) 1000, (short) 1000, speed++);
+		return buffer;
+	}
+
+	/**
+	 * Implementation of {@link Message#speedMessage(short, short)} before {@link MessageEncoder}, kept as baseline.
+	 */
+	private static byte[] streamSpeedMessage(short speed, short acceleration) {
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			os.write(new byte[] {6, MessageEncoder.SET_SPEED});
+			os.write(new byte[] {(byte) (speed & 0xff), (byte) ((speed >> 8) & 0xff)});
+			os.write(new byte[] {(byte) (acceleration & 0xff), (byte) ((acceleration >> 8) & 0xff)});
+			os.write(new byte[] {0});
+			return os.toByteArray();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.pdbm.janki.core.notifications;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdbm.janki.core.RoadPiece;
+
+/**
+ * Decoding of a position update, object based {@link NotificationParser#parse(de.pdbm.janki.core.Vehicle, byte[])} 
+ * vs. allocation free {@link NotificationParser#decode(byte[], int, NotificationHandler)}.
+ * <p>
+ * 
+ * Run with {@code -prof gc} to see the allocation rate, {@code decodePositionUpdate} must show 0 B/op.
+ * 
+ * @author bernd
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationParserBenchmark {
+
+	private final byte[] positionUpdate = new byte[] {16, NotificationParser.POSITION_UPDATE, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	private final byte[] transitionUpdate = new byte[] {18, NotificationParser.TRANSITION_UPDATE, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 56, 56};
+
+	private final byte[] chargerInfo = new byte[] {5, NotificationParser.CHARGER_INFO, 0, 0, 0, 1};
+
+	private NotificationHandler handler;
+
+	@Setup
+	public void setup(Blackhole blackhole) {
+		handler = new NotificationHandler() {
+			@Override
+			public void onPositionUpdate(int location, int roadPieceId, RoadPiece roadPiece, boolean ascendingLocations) {
+				blackhole.consume(location);
+				blackhole.consume(roadPiece);
+				blackhole.consume(ascendingLocations);
+			}
+		};
+	}
+
+	@Benchmark
+	public Notification parsePositionUpdate() {
+		return NotificationParser.parse(null, positionUpdate);
+	}
+
+	@Benchmark
+	public Notification parseTransitionUpdate() {
+		return NotificationParser.parse(null, transitionUpdate);
+	}
+
+	@Benchmark
+	public Notification parseChargerInfo() {
+		return NotificationParser.parse(null, chargerInfo);
+	}
+
+	@Benchmark
+	public void decodePositionUpdate() {
+		NotificationParser.decode(positionUpdate, 0, handler);
+	}
+
+}
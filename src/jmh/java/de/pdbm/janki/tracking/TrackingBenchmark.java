@@ -0,0 +1,66 @@
+package de.pdbm.janki.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.pdbm.janki.core.RoadPiece;
+
+/**
+ * {@link Tracking#raceTrackAsAsciiArt(List)} for synthetic rectangular tracks with the given number of straights per side.
+ *
+ * @author bernd
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackingBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	int side;
+
+	private List<CoordinatesRoadPieceTuple> tuples;
+
+	@Setup
+	public void setup() {
+		tuples = new ArrayList<>();
+		tuples.add(new CoordinatesRoadPieceTuple(0, 0, RoadPiece.CORNER, '/'));
+		for (int x = 1; x <= side; x++) {
+			tuples.add(new CoordinatesRoadPieceTuple(x, 0, RoadPiece.STRAIGHT, '-'));
+		}
+		tuples.add(new CoordinatesRoadPieceTuple(side + 1, 0, RoadPiece.CORNER, '\\'));
+		for (int y = 1; y <= side; y++) {
+			tuples.add(new CoordinatesRoadPieceTuple(side + 1, y, RoadPiece.STRAIGHT, '|'));
+		}
+		tuples.add(new CoordinatesRoadPieceTuple(side + 1, side + 1, RoadPiece.CORNER, '/'));
+		for (int x = side; x >= 1; x--) {
+			tuples.add(new CoordinatesRoadPieceTuple(x, side + 1, RoadPiece.STRAIGHT, '-'));
+		}
+		tuples.add(new CoordinatesRoadPieceTuple(0, side + 1, RoadPiece.CORNER, '\\'));
+		for (int y = side; y >= 1; y--) {
+			tuples.add(new CoordinatesRoadPieceTuple(0, y, RoadPiece.STRAIGHT, '|'));
+		}
+	}
+
+	@Benchmark
+	public char[][] raceTrackAsAsciiArt() {
+		return Tracking.raceTrackAsAsciiArt(tuples);
+	}
+
+}
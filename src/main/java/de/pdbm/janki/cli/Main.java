@@ -1,10 +1,9 @@
 package de.pdbm.janki.cli;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
-import java.util.stream.Collectors;
 
+import de.pdbm.janki.core.Configuration;
+import de.pdbm.janki.core.JAnki;
 import de.pdbm.janki.core.LogType;
 import de.pdbm.janki.core.Logger;
 import de.pdbm.janki.core.Vehicle;
@@ -13,20 +12,19 @@ public class Main {
 
 	public static void main(String[] args) throws Exception {
 		Logger.switchLogTypeOn(LogType.values());
-		Vehicle.getVehicles().forEach(v -> v.addNotificationListener(new PositionUpdateListenerExample()));
-		//Vehicle.getVehicles().forEach(v -> v.addNotificationListener(new TransitionUpdateListenerExample()));
+		JAnki.onVehicleReady(v -> v.addNotificationListener(new PositionUpdateListenerExample()));
+		//JAnki.onVehicleReady(v -> v.addNotificationListener(new TransitionUpdateListenerExample()));
+		JAnki.start(new Configuration());
 
 		Scanner input = new Scanner(System.in);
-		List<String> macs = new ArrayList<>();
 		Vehicle vehicle = null; // selected vehicle
 
 		System.out.print("> ");
 		while (input.hasNextLine()) {
-			macs = Vehicle.getVehicles().stream().map(v -> v.getMacAddress()).collect(Collectors.toList());
 			String line = input.nextLine();
 			if (line.equals("devices")) {
 				Vehicle.getVehicles().forEach(System.out::println);
-			} else if (macs.contains(line)) {
+			} else if (Vehicle.find(line).isPresent()) {
 				vehicle = Vehicle.get(line);
 				System.out.println("Current vehicle: " + vehicle);
 			} else if (line.startsWith("speed ")) {
@@ -34,12 +32,12 @@ public class Main {
 				if (vehicle == null) {
 					System.out.println("No vehicle selected");
 				} else if (tokens.length == 2) {
-					vehicle.setSpeed(Integer.valueOf((tokens[1])));
+					vehicle.setSpeed(Integer.valueOf((tokens[1]))).exceptionally(Main::printFailure);
 				}
 			} else if (line.equals("clr")) {
-				vehicle.changeLane(20.0f);
+				vehicle.changeLane(20.0f).exceptionally(Main::printFailure);
 			} else if (line.equals("cll")) {
-				vehicle.changeLane(-20.0f);
+				vehicle.changeLane(-20.0f).exceptionally(Main::printFailure);
 			} else {
 				System.out.println("unknown command " + line);
 				System.out.println("possible commands:");
@@ -54,4 +52,9 @@ public class Main {
 		input.close();
 	}
 
+	private static Void printFailure(Throwable throwable) {
+		System.out.println("command failed: " + throwable.getMessage());
+		return null;
+	}
+
 }
@@ -0,0 +1,543 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import de.pdbm.janki.core.notifications.ManufacturerData;
+import de.pdbm.janki.core.notifications.Message;
+import tinyb.BluetoothAdapter;
+import tinyb.BluetoothDevice;
+import tinyb.BluetoothGattCharacteristic;
+import tinyb.BluetoothGattService;
+import tinyb.BluetoothManager;
+import tinyb.TransportType;
+
+/**
+ * Class hiding the BLE stuff.
+ * <p>
+ * 
+ * Genuine documentation of the Anki C implementation is
+ * <a href="https://anki.github.io/drive-sdk/docs/programming-guide">Ankis Programming Guide</a>. 
+ * As locale PDF: <a href="./doc-files/anki-programming-guide.pdf">Ankis Programming Guide</a>
+ * <p>
+ * 
+ * TinyB documentation:  
+ * <a href="http://iotdk.intel.com/docs/master/tinyb/java/annotated.html">TinyB Class List</a>
+ * <p>
+ * 
+ * device.getBluetoothType() gibt Fehler:
+ * https://github.com/intel-iot-devkit/tinyb/issues/69
+ * 
+ * 
+ * @author bernd
+ *
+ */
+class AnkiBle {
+
+	private static final String ANKI_SERVICE_UUID = "BE15BEEF-6186-407E-8381-0BD89C4D8DF4";
+	private static final String ANKI_READ_CHARACTERISTIC_UUID = "BE15BEE0-6186-407E-8381-0BD89C4D8DF4";
+	private static final String ANKI_WRITE_CHARACTERISTIC_UUID = "BE15BEE1-6186-407E-8381-0BD89C4D8DF4";
+
+	private static ScheduledExecutorService executor; // update devices asynchronously
+
+	private static ExecutorService lifecycle; // a virtual thread per vehicle initialization, null for platform threads
+
+	private static final Set<Vehicle> initializing = ConcurrentHashMap.newKeySet(); // vehicles initialized by lifecycle
+
+	private static final Map<LogType, Boolean> logToggles = new ConcurrentHashMap<>();
+
+	/*
+	 * Lock für Tipp aus Tinyb-Dokumentation: Do not attempt to perform multiple connections simultaneously. Instead, serialize all
+	 * connection attempts, so that connection, service discovery and characteristic discovery for one peripheral are completed before
+	 * attempting to establish another connection.
+	 * 
+	 */
+	private static ReentrantLock lock = new ReentrantLock();
+
+	static CharacteristicCache cache; // set by init()
+
+	private static Configuration configuration; // set by init()
+
+	private static final long IGNORE_TIME = TimeUnit.MINUTES.toNanos(10); // forget non Anki devices not seen for this time
+
+	private static final Map<Long, Long> ignoredDevices = new HashMap<>(); // MACs of non Anki devices to last seen, guarded by lock
+
+	private static volatile boolean discovering;
+
+	private AnkiBle() {
+	}
+
+	/**
+	 * Starts discovery and initialization of devices in background.
+	 * <p>
+	 * Returns immediately. Vehicles are reported to {@link JAnki} as soon as they are initialized.
+	 * 
+	 * @param configuration the configuration to use
+	 */
+	static void init(Configuration configuration) {
+		Stream.of(LogType.values()).forEach(value -> logToggles.put(value, Boolean.FALSE));
+		cache = new CharacteristicCache(configuration.getCacheFile());
+		AnkiBle.configuration = configuration;
+		if (configuration.isVirtualThreads()) {
+			executor = Executors.newScheduledThreadPool(1, Threads.factory("janki-ble", true));
+			lifecycle = Executors.newThreadPerTaskExecutor(Threads.factory("janki-vehicle", true));
+		} else {
+			executor = Executors.newScheduledThreadPool(1);
+		}
+		executor.execute(() -> {
+			AnkiBle.setDiscoveryFilter();
+			AnkiBle.updateDevices();
+		});
+	}
+
+	/**
+	 * Stops discovery and initialization of devices.
+	 */
+	static void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (lifecycle != null) {
+			lifecycle.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the write characteristics of a hardware vehicle.
+	 * 
+	 * @param device device to get write characteristics for
+	 * @return the write characteristics of the device
+	 */
+	static BluetoothGattCharacteristic writeCharacteristicFor(BluetoothDevice device) {
+		return characteristicFor(ANKI_WRITE_CHARACTERISTIC_UUID, device);
+	}
+
+	/**
+	 * Returns the read characteristics of a hardware vehicle.
+	 * 
+	 * @param device device to get read characteristics for
+	 * @return the read characteristics of the device
+	 */
+	static BluetoothGattCharacteristic readCharacteristicFor(BluetoothDevice device) {
+		return characteristicFor(ANKI_READ_CHARACTERISTIC_UUID, device);
+	}
+
+	/**
+	 * Returns the read or write characteristics of a hardware vehicle.
+	 * 
+	 * @param characteristicUUID UUID of read or write characteristic
+	 * @param device the device for which the characteristic is set 
+	 * @return the characteristic
+	 */
+	private static BluetoothGattCharacteristic characteristicFor(String characteristicUUID, BluetoothDevice device) {
+		// direktes Lesen funktioniert nicht
+		// BluetoothGattService service = device.find(ANKI_SERVICE_UUID);
+		// BluetoothGattCharacteristic write = service.find(ANKI_WRITE_UUID);
+		// also iterieren
+
+		BluetoothGattCharacteristic readOrWriteCharacteristic = null;
+		lock.lock();
+		try {
+			readOrWriteCharacteristic = cachedCharacteristicFor(characteristicUUID, device);
+			if (readOrWriteCharacteristic != null) {
+				return readOrWriteCharacteristic;
+			}
+			for (int i = 0; i < 10; i++) {
+				boolean connected = device.connect();
+				if (connected) {
+					List<BluetoothGattService> services = device.getServices();
+					for (int s = 0; s < services.size(); s++) {
+						List<BluetoothGattCharacteristic> characteristics = services.get(s).getCharacteristics();
+						for (int c = 0; c < characteristics.size(); c++) {
+							if (characteristics.get(c).getUUID().toUpperCase().equals(characteristicUUID)) {
+								readOrWriteCharacteristic = characteristics.get(c);
+								cache.putPosition(device.getAddress(), characteristicUUID, s, c);
+							}
+						}
+					}
+					if (readOrWriteCharacteristic != null) {
+						return readOrWriteCharacteristic;
+					}
+				} else {
+					System.out.println("no connection in 'characteristicFor()'");
+				}
+				sleep(100);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return readOrWriteCharacteristic;
+	}
+
+	/**
+	 * Returns the characteristic at its cached position, if the position is still valid.
+	 * <p>
+	 * The cache entries of the device are invalidated if the characteristic found at the cached 
+	 * position has another UUID.
+	 * 
+	 * @param characteristicUUID UUID of read or write characteristic
+	 * @param device the device for which the characteristic is set 
+	 * @return the characteristic or null, if not cached or not valid anymore
+	 */
+	private static BluetoothGattCharacteristic cachedCharacteristicFor(String characteristicUUID, BluetoothDevice device) {
+		Optional<int[]> position = cache.position(device.getAddress(), characteristicUUID);
+		if (position.isEmpty() || !device.connect()) {
+			return null;
+		}
+		List<BluetoothGattService> services = device.getServices();
+		int serviceIndex = position.get()[0];
+		int characteristicIndex = position.get()[1];
+		if (serviceIndex < services.size()) {
+			List<BluetoothGattCharacteristic> characteristics = services.get(serviceIndex).getCharacteristics();
+			if (characteristicIndex < characteristics.size() 
+					&& characteristics.get(characteristicIndex).getUUID().toUpperCase().equals(characteristicUUID)) {
+				Logger.log(LogType.DEVICE_INITIALIZATION, "cached characteristic {} used for {}", characteristicUUID, device.getAddress());
+				return characteristics.get(characteristicIndex);
+			}
+		}
+		cache.invalidate(device.getAddress());
+		return null;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Discover new Anki devices.
+	 * <p>
+	 * Only devices not seen before are inspected, so the cost of a scan does not depend on the number 
+	 * of Bluetooth devices in the room. A device is ignored if it advertises UUIDs, but not the Anki service UUID.
+	 * Ignored devices not seen for ten minutes are forgotten, so devices rotating random addresses do not
+	 * grow the set without limit. For every new Anki device {@link #onDeviceAdded(BluetoothDevice)} is called.
+	 * 
+	 * @return the number of new Anki devices
+	 */
+	static int discoverDevices() {
+		Logger.log(LogType.DEVICE_DISCOVERY, "discovering bluetooth devices ...");
+		int added = 0;
+		lock.lock();
+		try {
+			BluetoothManager manager = BluetoothManager.getBluetoothManager();
+			long now = System.nanoTime();
+			for (BluetoothDevice device : manager.getDevices()) {
+				long mac = MacAddress.toLong(device.getAddress());
+				Optional<Vehicle> known = Vehicle.registry.find(mac);
+				if (known.isPresent()) {
+					known.get().lastSeen = now;
+				} else if (ignoredDevices.replace(mac, now) == null) {
+					String[] uuids = device.getUUIDs();
+					if (isAnkiDevice(uuids)) {
+						onDeviceAdded(device);
+						added++;
+					} else if (uuids.length > 0) {
+						ignoredDevices.put(mac, now);
+					}
+				}
+			}
+			ignoredDevices.values().removeIf(lastSeen -> now - lastSeen > IGNORE_TIME);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			lock.unlock();
+			Logger.log(LogType.DEVICE_DISCOVERY, "discovering bluetooth devices finished, {} new", added);
+		}
+		return added;
+	}
+
+	private static boolean isAnkiDevice(String[] uuids) {
+		for (String uuid : uuids) {
+			if (ANKI_SERVICE_UUID.equalsIgnoreCase(uuid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called for every newly discovered Anki device. Registers and initializes the vehicle immediately,
+	 * with virtual threads without waiting for the initialization.
+	 * 
+	 * @param device the new device
+	 */
+	private static void onDeviceAdded(BluetoothDevice device) {
+		String address = device.getAddress();
+		Optional<Vehicle.Model> model = cache.model(address);
+		if (model.isEmpty()) {
+			model = ManufacturerData.modelFor(device);
+			model.ifPresent(m -> cache.putModel(address, m));
+		}
+		Vehicle vehicle = new Vehicle(MacAddress.toLong(address), model, new TinyBLink(device));
+		vehicle.lastSeen = System.nanoTime();
+		if (Vehicle.registry.add(vehicle)) {
+			Logger.log(LogType.DEVICE_DISCOVERY, "vehicle {} added", address);
+			device.enableConnectedNotifications(flag -> {
+				vehicle.onConnectedNotification(flag);
+			});
+			if (lifecycle == null) {
+				initializeDevice(vehicle);
+			} else {
+				initializeInBackground(vehicle);
+			}
+		}
+	}
+
+	/**
+	 * Restricts discovery to LE devices advertising the Anki service, if supported by BlueZ.
+	 */
+	private static void setDiscoveryFilter() {
+		try {
+			for (BluetoothAdapter adapter : BluetoothManager.getBluetoothManager().getAdapters()) {
+				adapter.setDiscoveryFilter(Collections.singletonList(UUID.fromString(ANKI_SERVICE_UUID)), 0, 0, TransportType.LE);
+			}
+		} catch (Exception e) {
+			Logger.log(LogType.DEVICE_DISCOVERY, "discovery filter not supported: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Initialize all devices not ready yet - at least try to. Vehicles recovered by the {@link ReconnectManager} are skipped.
+	 * With virtual threads every vehicle is initialized by its own thread.
+	 * 
+	 * @return number of initializations
+	 */
+	static int initializeDevices() {
+		int numberOfInitializations = 0;
+		Logger.log(LogType.DEVICE_INITIALIZATION, "initializing bluetooth devices ...");
+		ReconnectManager reconnectManager = JAnki.reconnectManager();
+		List<Future<Integer>> initializations = new ArrayList<>();
+		for (Vehicle vehicle : Vehicle.registry.snapshot()) {
+			if (reconnectManager != null && reconnectManager.isRecovering(vehicle)) {
+				continue; // reconnect manager is faster and restores state
+			}
+			if (vehicle.link instanceof TinyBLink && (!vehicle.isConnected() || !vehicle.link.isReady())) {
+				if (lifecycle == null) {
+					numberOfInitializations += initializeDevice(vehicle);
+				} else {
+					initializations.add(initializeInBackground(vehicle));
+				}
+			}
+		}
+		for (Future<Integer> initialization : initializations) {
+			try {
+				numberOfInitializations += initialization.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		Logger.log(LogType.DEVICE_INITIALIZATION, "initializing bluetooth devices finished");
+		return numberOfInitializations;
+	}
+
+	/**
+	 * Initializes the vehicle by a virtual thread, unless its initialization is already running.
+	 * 
+	 * @param vehicle the vehicle to initialize
+	 * @return future of the number of initializations
+	 */
+	private static Future<Integer> initializeInBackground(Vehicle vehicle) {
+		if (!initializing.add(vehicle)) {
+			return CompletableFuture.completedFuture(0);
+		}
+		return lifecycle.submit(() -> {
+			try {
+				return initializeDevice(vehicle);
+			} finally {
+				initializing.remove(vehicle);
+			}
+		});
+	}
+
+	/**
+	 * Initialize a device - at least try to.
+	 * 
+	 * <p>
+	 * This incldes
+	 * <ul>
+	 * 	<li> set read characteristic</li>
+	 * 	<li> set write characteristicsetzen </li>
+	 *  <li> set SDK modesetzen </li>
+	 * 	<li> register device for value notifications</li>
+	 * </ul>
+	 * 
+	 * @param vehicle the vehicle to initialize
+	 * @return number of initializations
+	 */
+	static int initializeDevice(Vehicle vehicle) {
+		int numberOfInitializations = 0;
+		TinyBLink link = (TinyBLink) vehicle.link;
+		try {
+			if (!vehicle.isConnected()) {
+				vehicle.connecting(true);
+				link.bluetoothDevice.connect();
+			}
+			if (link.writeCharacteristic == null) {
+				link.writeCharacteristic = writeCharacteristicFor(link.bluetoothDevice);
+				Logger.log(LogType.DEVICE_INITIALIZATION, () -> "Write-Characteristic for " + vehicle + (vehicle == null ? " not " : "") + " set");
+				numberOfInitializations++;
+				if (link.writeCharacteristic != null) {
+					link.writeCharacteristic.writeValue(Message.getSdkMode());
+				}
+			}
+			if (link.readCharacteristic == null) {
+				link.readCharacteristic = readCharacteristicFor(link.bluetoothDevice);
+				Logger.log(LogType.DEVICE_INITIALIZATION, () -> "Read-Characteristic for " + vehicle + (vehicle == null ? " not " : ""));
+				numberOfInitializations++;
+				if (link.readCharacteristic != null) {
+					link.valueNotifications = vehicle::onValueNotification;
+					link.readCharacteristic.enableValueNotifications(bytes -> {
+						vehicle.onValueNotification(bytes);
+					});
+					Logger.log(LogType.DEVICE_INITIALIZATION, "Value notifications set for {}", vehicle);
+				}
+			}
+			if (link.isReady()) {
+				vehicle.initialized();
+				JAnki.vehicleReady(vehicle);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			vehicle.connecting(false);
+		}
+		return numberOfInitializations;
+	}
+
+	/**
+	 * Connects a device again after the connection was lost, see {@link Link#reconnect()}.
+	 * <p>
+	 * Characteristics are looked up only if not known yet, value notifications are enabled again.
+	 * Connection attempts are serialized with discovery and initialization, as recommended by TinyB.
+	 * 
+	 * @param link the link of the vehicle
+	 * @return true, if the device is connected and ready
+	 */
+	static boolean reconnect(TinyBLink link) {
+		lock.lock();
+		try {
+			if (!link.bluetoothDevice.connect()) {
+				return false;
+			}
+			if (link.writeCharacteristic == null) {
+				link.writeCharacteristic = writeCharacteristicFor(link.bluetoothDevice);
+			}
+			if (link.readCharacteristic == null) {
+				link.readCharacteristic = readCharacteristicFor(link.bluetoothDevice);
+			}
+			if (!link.isReady() || link.valueNotifications == null) {
+				return false;
+			}
+			link.readCharacteristic.enableValueNotifications(bytes -> link.valueNotifications.accept(bytes));
+			Logger.log(LogType.DEVICE_INITIALIZATION, "{} reconnected", link.bluetoothDevice.getAddress());
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns true, if all known vehicles are ready and at least the expected number of vehicles is known.
+	 * 
+	 * @return true, if fleet is complete
+	 */
+	private static boolean isFleetComplete() {
+		List<Vehicle> vehicles = Vehicle.registry.snapshot();
+		if (vehicles.isEmpty() || vehicles.size() < configuration.getExpectedVehicles()) {
+			return false;
+		}
+		for (Vehicle vehicle : vehicles) {
+			if (vehicle.link instanceof TinyBLink && (!vehicle.isConnected() || !vehicle.link.isReady())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evicts vehicles the eviction policy considers stale and purges collected weak listeners of the others.
+	 */
+	private static void evictStaleVehicles() {
+		EvictionPolicy policy = configuration.getEvictionPolicy();
+		long now = System.nanoTime();
+		for (Vehicle vehicle : Vehicle.registry.snapshot()) {
+			if (vehicle.link instanceof TinyBLink && policy.isStale(vehicle, Duration.ofNanos(now - vehicle.lastSeen))) {
+				lock.lock();
+				try {
+					JAnki.evict(vehicle);
+				} finally {
+					lock.unlock();
+				}
+			} else {
+				vehicle.purgeListeners();
+			}
+		}
+	}
+
+	/**
+	 * Update Devices.
+	 * <p>
+	 * 
+	 * This method reschedules itself to
+	 * <ul>
+	 * 	<li> discover new devices</li>
+	 * 	<li> initialize known devices</li>
+	 *  <li> evict devices which haven't be seen for a long time, see {@link Configuration#getEvictionPolicy()}</li>
+	 * </ul>
+	 * 
+	 * The cadence is adaptive: while the fleet is incomplete, discovery is running and devices are scanned 
+	 * every {@link Configuration#getDiscoveryInterval()}. Once the fleet is complete, discovery is stopped 
+	 * to save radio time and a short scan happens every {@link Configuration#getIdleDiscoveryInterval()} only.
+	 * 
+	 */
+	static void updateDevices() {
+		Logger.log(LogType.DEVICE_UPDATE, "updating bluetooth devices");
+		Duration next = configuration.getDiscoveryInterval();
+		try {
+			BluetoothManager manager = BluetoothManager.getBluetoothManager();
+			boolean wasDiscovering = discovering;
+			if (!discovering) {
+				discovering = manager.startDiscovery();
+			}
+			int numberOfDiscoveredDevices = discoverDevices();
+			Logger.log(LogType.DEVICE_UPDATE, "number of discovered devices: {}", numberOfDiscoveredDevices);
+			int numberOfInitializedDevices = initializeDevices();
+			Logger.log(LogType.DEVICE_UPDATE, "number of initialized devices: {}", numberOfInitializedDevices);
+			// stop discovery only after it had a full interval to see new devices
+			if (wasDiscovering && isFleetComplete()) {
+				manager.stopDiscovery();
+				discovering = false;
+				next = configuration.getIdleDiscoveryInterval();
+				Logger.log(LogType.DEVICE_UPDATE, "fleet complete, discovery idle");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		evictStaleVehicles();
+		Logger.log(LogType.DEVICE_UPDATE, "updating bluetooth devices finished");
+		if (!executor.isShutdown()) {
+			executor.schedule(AnkiBle::updateDevices, next.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+}
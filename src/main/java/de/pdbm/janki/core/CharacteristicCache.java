@@ -0,0 +1,128 @@
+package de.pdbm.janki.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Persistent cache of GATT characteristic positions and vehicle models, keyed by MAC address.
+ * <p>
+ *
+ * Walking all services and characteristics of a device is slow, so the position of a resolved characteristic,
+ * i.e. the index of its service in {@code device.getServices()} and its own index in
+ * {@code service.getCharacteristics()}, is stored in a small properties file. The cached position must be
+ * validated against the characteristic's UUID on connect and {@link #invalidate(String) invalidated} on mismatch.
+ *
+ * @author bernd
+ *
+ */
+class CharacteristicCache {
+
+	static final String CACHE_FILE_NAME = "janki.cache";
+
+	private static final String MODEL = ".model";
+
+	private final Path file;
+
+	private final Properties properties = new Properties(); // synchronized by Properties itself
+
+	CharacteristicCache(Path file) {
+		this.file = file;
+		if (Files.exists(file)) {
+			try (InputStream in = Files.newInputStream(file)) {
+				properties.load(in);
+			} catch (IOException | IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the cached position of a characteristic.
+	 *
+	 * @param mac MAC address of the device
+	 * @param characteristicUUID UUID of the characteristic
+	 * @return service index and characteristic index, if cached
+	 */
+	Optional<int[]> position(String mac, String characteristicUUID) {
+		String value = properties.getProperty(mac + "." + characteristicUUID);
+		if (value == null) {
+			return Optional.empty();
+		}
+		try {
+			String[] indices = value.split(":");
+			return Optional.of(new int[] { Integer.parseInt(indices[0]), Integer.parseInt(indices[1]) });
+		} catch (RuntimeException e) {
+			invalidate(mac);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Caches the position of a characteristic.
+	 *
+	 * @param mac MAC address of the device
+	 * @param characteristicUUID UUID of the characteristic
+	 * @param serviceIndex index of the service in the device's services
+	 * @param characteristicIndex index of the characteristic in the service's characteristics
+	 */
+	void putPosition(String mac, String characteristicUUID, int serviceIndex, int characteristicIndex) {
+		String value = serviceIndex + ":" + characteristicIndex;
+		if (!value.equals(properties.setProperty(mac + "." + characteristicUUID, value))) {
+			store();
+		}
+	}
+
+	/**
+	 * Returns the cached model of a vehicle.
+	 *
+	 * @param mac MAC address of the vehicle
+	 * @return the model, if cached
+	 */
+	Optional<Vehicle.Model> model(String mac) {
+		String value = properties.getProperty(mac + MODEL);
+		try {
+			return value == null ? Optional.empty() : Optional.of(Vehicle.Model.valueOf(value));
+		} catch (IllegalArgumentException e) {
+			invalidate(mac);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Caches the model of a vehicle.
+	 *
+	 * @param mac MAC address of the vehicle
+	 * @param model the model
+	 */
+	void putModel(String mac, Vehicle.Model model) {
+		if (!model.name().equals(properties.setProperty(mac + MODEL, model.name()))) {
+			store();
+		}
+	}
+
+	/**
+	 * Removes all cached entries of a device.
+	 *
+	 * @param mac MAC address of the device
+	 */
+	void invalidate(String mac) {
+		if (properties.keySet().removeIf(key -> ((String) key).startsWith(mac + "."))) {
+			Logger.log(LogType.DEVICE_INITIALIZATION, "cache for {} invalidated", mac);
+			store();
+		}
+	}
+
+	private void store() {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			properties.store(out, "JAnki characteristic cache");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,408 @@
+package de.pdbm.janki.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Queue of outgoing Anki messages of one vehicle.
+ * <p>
+ *
+ * Messages are written by a single writer, never by the thread issuing the command.
+ * Callers get a {@link CompletableFuture} which completes after the message is written.
+ * <ul>
+ *   <li>a speed or change lane command replaces a not yet written command of the same kind (latest wins)</li>
+ *   <li>stop and disconnect commands jump the queue</li>
+ *   <li>stop, disconnect and ping commands do not wait for the adapter-wide write budget, see {@link Throttle}</li>
+ * </ul>
+ *
+ * Queue depth, coalesced commands and write latency are exposed to see how close we are to the limits
+ * of the BLE link. Write latencies are recorded in a histogram, so percentiles are available via JMX,
+ * see {@link VehicleMetricsMBean}.
+ *
+ * @author bernd
+ *
+ */
+public class CommandQueue {
+
+	/**
+	 * Kind of a command, which determines coalescing, priority and throttling.
+	 */
+	enum Kind {
+
+		SPEED(true, false, true), CHANGE_LANE(true, false, true), STOP(false, true, false), DISCONNECT(false, true, false),
+		PING(false, false, false), OTHER(false, false, true);
+
+		private final boolean coalescing; // newer command replaces pending one
+		private final boolean priority; // command jumps the queue
+		private final boolean throttled; // command waits for the write budget
+
+		private Kind(boolean coalescing, boolean priority, boolean throttled) {
+			this.coalescing = coalescing;
+			this.priority = priority;
+			this.throttled = throttled;
+		}
+	}
+
+	/**
+	 * Writes a message to the BLE device.
+	 */
+	@FunctionalInterface
+	interface Writer {
+
+		/**
+		 * Writes the message.
+		 *
+		 * @param message the Anki message
+		 * @return true, if message was written, false otherwise
+		 */
+		boolean write(byte[] message);
+	}
+
+	/**
+	 * Waits for the budget to write a message, e.g. {@link WriteScheduler}. Not called for stop, disconnect and ping
+	 * commands, so a vehicle is stopped without delay and the round trip time of a ping does not include the wait.
+	 * A stop or disconnect command arriving while the writer waits cancels the wait, so it is written first.
+	 */
+	interface Throttle {
+
+		Throttle NONE = new Throttle() {
+
+			@Override
+			public boolean acquire(BooleanSupplier cancelled) {
+				return true;
+			}
+
+			@Override
+			public void wakeUp() {
+			}
+		};
+
+		/**
+		 * Waits until the next message may be written or the wait is cancelled.
+		 *
+		 * @param cancelled checked while waiting, the wait is given up if true
+		 * @return true, if the message may be written, false if cancelled
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		boolean acquire(BooleanSupplier cancelled) throws InterruptedException;
+
+		/**
+		 * Makes a waiting writer check its cancel condition.
+		 */
+		void wakeUp();
+	}
+
+	private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(Threads.factory("janki-writer", false));
+
+	private static final ExecutorService VIRTUAL_EXECUTOR = Executors.newThreadPerTaskExecutor(Threads.factory("janki-writer", true));
+
+	private final Writer writer;
+
+	private final Executor executor;
+
+	private final Throttle throttle;
+
+	private final Deque<Command> priorityCommands = new ArrayDeque<>(); // guarded by this
+
+	private final Deque<Command> commands = new ArrayDeque<>(); // guarded by this
+
+	private final Map<Kind, Command> pendingCommands = new EnumMap<>(Kind.class); // guarded by this
+
+	private boolean draining; // guarded by this
+
+	private Command throttled; // command waiting for the budget, guarded by this
+
+	private final LongAdder coalescedCommands = new LongAdder();
+
+	private final LongAdder writtenMessages = new LongAdder();
+
+	private final LongAdder failedMessages = new LongAdder();
+
+	final LatencyHistogram writeLatency = new LatencyHistogram(); // successfully written messages only
+
+	CommandQueue(Writer writer) {
+		this(writer, DEFAULT_EXECUTOR);
+	}
+
+	CommandQueue(Writer writer, Executor executor) {
+		this(writer, executor, Throttle.NONE);
+	}
+
+	CommandQueue(Writer writer, Executor executor, Throttle throttle) {
+		this.writer = writer;
+		this.executor = executor;
+		this.throttle = throttle;
+	}
+
+	/**
+	 * Returns the executor draining command queues: a cached pool of platform threads or a virtual thread per drain.
+	 *
+	 * @param virtual true for virtual threads
+	 * @return the executor
+	 */
+	static Executor executor(boolean virtual) {
+		return virtual ? VIRTUAL_EXECUTOR : DEFAULT_EXECUTOR;
+	}
+
+	/**
+	 * Enqueues a command consisting of one or more messages.
+	 * <p>
+	 * If a command of a coalescing kind is still pending, its messages are replaced and the future
+	 * of the pending command is returned.
+	 *
+	 * @param kind the kind of command
+	 * @param messages the messages to write in this order
+	 * @return future completing after all messages are written
+	 */
+	CompletableFuture<Void> submit(Kind kind, byte[]... messages) {
+		Command command;
+		boolean wakeUp;
+		boolean start;
+		synchronized (this) {
+			Command pending = pendingCommands.get(kind);
+			if (kind.coalescing && pending != null) {
+				pending.messages = messages;
+				coalescedCommands.increment();
+				return pending.future;
+			}
+			command = new Command(kind, messages);
+			if (kind == Kind.STOP) {
+				// stop supersedes all pending speed commands, including one waiting for the budget
+				Command speed = pendingCommands.remove(Kind.SPEED);
+				if (speed != null) {
+					commands.remove(speed);
+					supersede(speed, command);
+				}
+				if (throttled != null && throttled.kind == Kind.SPEED && !throttled.superseded) {
+					supersede(throttled, command);
+				}
+			}
+			if (kind.priority) {
+				priorityCommands.addLast(command);
+			} else {
+				commands.addLast(command);
+				if (kind.coalescing) {
+					pendingCommands.put(kind, command);
+				}
+			}
+			wakeUp = kind.priority && throttled != null;
+			start = !draining;
+			draining = true;
+		}
+		if (wakeUp) {
+			throttle.wakeUp(); // the writer waits for the budget, let it write this command first
+		}
+		if (start) {
+			executor.execute(this::drain);
+		}
+		return command.future;
+	}
+
+	/**
+	 * Marks a speed command as superseded by a stop command, it completes with the stop command. Guarded by this.
+	 */
+	private void supersede(Command speed, Command stop) {
+		speed.superseded = true;
+		coalescedCommands.increment();
+		stop.future.whenComplete((v, e) -> complete(speed, e));
+	}
+
+	/**
+	 * Writes commands until the queue is empty.
+	 */
+	private void drain() {
+		while (true) {
+			Command command;
+			synchronized (this) {
+				command = priorityCommands.pollFirst();
+				if (command == null) {
+					command = commands.pollFirst();
+				}
+				if (command == null) {
+					draining = false;
+					return;
+				}
+				pendingCommands.remove(command.kind, command);
+			}
+			write(command);
+		}
+	}
+
+	/**
+	 * Writes the messages of a command and completes it, unless it is superseded while waiting for the budget.
+	 */
+	private void write(Command command) {
+		byte[][] messages;
+		synchronized (this) {
+			messages = command.messages;
+		}
+		Throwable failure = null;
+		try {
+			for (byte[] message : messages) {
+				if (command.kind.throttled && !awaitBudget(command)) {
+					return; // superseded by a stop, completes with it
+				}
+				if (!write(message)) {
+					failure = new IllegalStateException("writing message failed");
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = e;
+		} catch (Exception e) {
+			failure = e;
+		}
+		complete(command, failure);
+	}
+
+	/**
+	 * Waits for the budget to write the next message of a command. Stop and disconnect commands arriving meanwhile are
+	 * written first. The wait is not part of the write latency, it is recorded as throttle time.
+	 *
+	 * @return true, if the message may be written, false if the command was superseded by a stop
+	 */
+	private boolean awaitBudget(Command command) throws InterruptedException {
+		synchronized (this) {
+			throttled = command;
+		}
+		try {
+			while (true) {
+				boolean acquired = throttle.acquire(this::hasPriorityCommands);
+				Command priority;
+				while ((priority = pollPriorityCommand()) != null) {
+					write(priority);
+				}
+				synchronized (this) {
+					if (command.superseded) {
+						return false;
+					}
+				}
+				if (acquired) {
+					return true;
+				}
+			}
+		} finally {
+			synchronized (this) {
+				throttled = null;
+			}
+		}
+	}
+
+	private synchronized boolean hasPriorityCommands() {
+		return !priorityCommands.isEmpty();
+	}
+
+	private synchronized Command pollPriorityCommand() {
+		return priorityCommands.pollFirst();
+	}
+
+	private boolean write(byte[] message) {
+		long start = System.nanoTime();
+		boolean written;
+		try {
+			written = writer.write(message);
+		} catch (RuntimeException e) {
+			failedMessages.increment();
+			throw e;
+		}
+		long latency = System.nanoTime() - start;
+		if (written) {
+			writtenMessages.increment();
+			writeLatency.record(latency);
+		} else {
+			failedMessages.increment();
+		}
+		return written;
+	}
+
+	private static void complete(Command command, Throwable failure) {
+		if (failure == null) {
+			command.future.complete(null);
+		} else {
+			command.future.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * Returns the number of commands waiting to be written.
+	 *
+	 * @return number of waiting commands
+	 */
+	public synchronized int getQueueDepth() {
+		return priorityCommands.size() + commands.size();
+	}
+
+	/**
+	 * Returns the number of commands replaced by newer commands before they were written.
+	 *
+	 * @return number of coalesced commands
+	 */
+	public long getCoalescedCommands() {
+		return coalescedCommands.sum();
+	}
+
+	/**
+	 * Returns the number of successfully written messages.
+	 *
+	 * @return number of written messages
+	 */
+	public long getWrittenMessages() {
+		return writtenMessages.sum();
+	}
+
+	/**
+	 * Returns the number of messages the BLE device refused or failed to write.
+	 *
+	 * @return number of failed messages
+	 */
+	public long getFailedMessages() {
+		return failedMessages.sum();
+	}
+
+	/**
+	 * Returns the average write latency of successfully written messages.
+	 *
+	 * @return average write latency in nanoseconds
+	 */
+	public long getAverageWriteLatency() {
+		return writeLatency.getMean();
+	}
+
+	/**
+	 * Returns the maximum write latency of successfully written messages.
+	 *
+	 * @return maximum write latency in nanoseconds
+	 */
+	public long getMaxWriteLatency() {
+		return writeLatency.getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "CommandQueue(depth " + getQueueDepth() + ", coalesced " + getCoalescedCommands() + ", written " + getWrittenMessages()
+				+ ", failed " + getFailedMessages() + ", avg latency " + getAverageWriteLatency() / 1000 + " µs)";
+	}
+
+	private static final class Command {
+
+		private final Kind kind;
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+		private byte[][] messages; // replaced while pending, guarded by queue
+		private boolean superseded; // by a stop while waiting for the budget, guarded by queue
+
+		private Command(Kind kind, byte[][] messages) {
+			this.kind = kind;
+			this.messages = messages;
+		}
+	}
+
+}
@@ -0,0 +1,606 @@
+package de.pdbm.janki.core;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+
+/**
+ * Configuration of the JAnki runtime, see {@link JAnki#start(Configuration)}.
+ * <p>
+ *
+ * All setters return this configuration to allow chaining:
+ *
+ * <pre>
+ * JAnki.start(new Configuration().setShutdownHook(false));
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public class Configuration {
+
+	private Transport transport = new TinyBTransport();
+
+	private boolean shutdownHook = true;
+
+	private Duration shutdownDeadline = Duration.ofSeconds(5);
+
+	private Path cacheFile = Paths.get(CharacteristicCache.CACHE_FILE_NAME);
+
+	private int expectedVehicles = 0;
+
+	private Duration discoveryInterval = Duration.ofSeconds(1);
+
+	private Duration idleDiscoveryInterval = Duration.ofSeconds(30);
+
+	private boolean asynchronousDispatch = false;
+
+	private int dispatchThreads = 2;
+
+	private int dispatchBufferSize = 256;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+	private int publisherBufferSize = Flow.defaultBufferSize();
+
+	private OverflowPolicy publisherOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+	private int controlLoopThreads = 2;
+
+	private double writeRate = 0;
+
+	private int writeBurst = 5;
+
+	private Path journalDirectory = null;
+
+	private int journalSegmentSize = 64 * 1024 * 1024;
+
+	private boolean jmx = true;
+
+	private Duration pingInterval = null;
+
+	private boolean reconnect = true;
+
+	private Duration reconnectInitialBackoff = Duration.ofMillis(100);
+
+	private Duration reconnectMaxBackoff = Duration.ofSeconds(10);
+
+	private int maxConcurrentReconnects = 1;
+
+	private boolean virtualThreads = false;
+
+	private EvictionPolicy evictionPolicy = EvictionPolicy.notSeenFor(Duration.ofSeconds(100));
+
+	/**
+	 * Returns the transport connecting JAnki to vehicles.
+	 *
+	 * @return the transport
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the transport connecting JAnki to vehicles. Default is Bluetooth LE by TinyB.
+	 *
+	 * @param transport the transport, e.g. {@link de.pdbm.janki.simulation.SimulatedTransport}
+	 * @return this configuration
+	 */
+	public Configuration setTransport(Transport transport) {
+		this.transport = transport;
+		return this;
+	}
+
+	/**
+	 * Returns true, if all vehicles are disconnected by a JVM shutdown hook.
+	 *
+	 * @return true, if shutdown hook is registered
+	 */
+	public boolean isShutdownHook() {
+		return shutdownHook;
+	}
+
+	/**
+	 * Register a JVM shutdown hook which disconnects all vehicles. Default is true.
+	 *
+	 * @param shutdownHook true, if shutdown hook should be registered
+	 * @return this configuration
+	 */
+	public Configuration setShutdownHook(boolean shutdownHook) {
+		this.shutdownHook = shutdownHook;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum time to stop and disconnect all vehicles by the shutdown hook and {@link JAnki#stop()}.
+	 *
+	 * @return the shutdown deadline
+	 */
+	public Duration getShutdownDeadline() {
+		return shutdownDeadline;
+	}
+
+	/**
+	 * Sets the maximum time to stop and disconnect all vehicles by the shutdown hook and {@link JAnki#stop()}. Default is 5 seconds.
+	 *
+	 * @param shutdownDeadline the shutdown deadline
+	 * @return this configuration
+	 */
+	public Configuration setShutdownDeadline(Duration shutdownDeadline) {
+		this.shutdownDeadline = shutdownDeadline;
+		return this;
+	}
+
+	/**
+	 * Returns the file caching characteristics and models of known vehicles.
+	 *
+	 * @return the cache file
+	 */
+	public Path getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Sets the file caching characteristics and models of known vehicles. Default is {@code janki.cache}.
+	 *
+	 * @param cacheFile the cache file
+	 * @return this configuration
+	 */
+	public Configuration setCacheFile(Path cacheFile) {
+		this.cacheFile = cacheFile;
+		return this;
+	}
+
+	/**
+	 * Returns the number of vehicles expected, 0 if unknown.
+	 *
+	 * @return number of expected vehicles
+	 */
+	public int getExpectedVehicles() {
+		return expectedVehicles;
+	}
+
+	/**
+	 * Sets the number of vehicles expected. Discovery stays aggressive until this number of vehicles is ready.
+	 * Default is 0, i.e. discovery gets idle as soon as all known vehicles are ready.
+	 *
+	 * @param expectedVehicles number of expected vehicles
+	 * @return this configuration
+	 */
+	public Configuration setExpectedVehicles(int expectedVehicles) {
+		this.expectedVehicles = expectedVehicles;
+		return this;
+	}
+
+	/**
+	 * Returns the scan interval while the fleet is incomplete.
+	 *
+	 * @return the discovery interval
+	 */
+	public Duration getDiscoveryInterval() {
+		return discoveryInterval;
+	}
+
+	/**
+	 * Sets the scan interval while the fleet is incomplete. Default is 1 second.
+	 *
+	 * @param discoveryInterval the discovery interval
+	 * @return this configuration
+	 */
+	public Configuration setDiscoveryInterval(Duration discoveryInterval) {
+		this.discoveryInterval = discoveryInterval;
+		return this;
+	}
+
+	/**
+	 * Returns the scan interval once all vehicles are ready.
+	 *
+	 * @return the idle discovery interval
+	 */
+	public Duration getIdleDiscoveryInterval() {
+		return idleDiscoveryInterval;
+	}
+
+	/**
+	 * Sets the scan interval once all vehicles are ready. Default is 30 seconds.
+	 *
+	 * @param idleDiscoveryInterval the idle discovery interval
+	 * @return this configuration
+	 */
+	public Configuration setIdleDiscoveryInterval(Duration idleDiscoveryInterval) {
+		this.idleDiscoveryInterval = idleDiscoveryInterval;
+		return this;
+	}
+
+	/**
+	 * Returns true, if value notifications are dispatched off the TinyB callback thread.
+	 *
+	 * @return true, if dispatch is asynchronous
+	 */
+	public boolean isAsynchronousDispatch() {
+		return asynchronousDispatch;
+	}
+
+	/**
+	 * Dispatch value notifications to listeners off the TinyB callback thread. Notifications are buffered per vehicle
+	 * and dispatched in order by a small pool of worker threads. Default is false, i.e. listeners are called by TinyB.
+	 *
+	 * @param asynchronousDispatch true, if dispatch should be asynchronous
+	 * @return this configuration
+	 */
+	public Configuration setAsynchronousDispatch(boolean asynchronousDispatch) {
+		this.asynchronousDispatch = asynchronousDispatch;
+		return this;
+	}
+
+	/**
+	 * Returns the number of worker threads for asynchronous dispatch.
+	 *
+	 * @return number of dispatch threads
+	 */
+	public int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	/**
+	 * Sets the number of worker threads for asynchronous dispatch. Default is 2.
+	 *
+	 * @param dispatchThreads number of dispatch threads
+	 * @return this configuration
+	 */
+	public Configuration setDispatchThreads(int dispatchThreads) {
+		this.dispatchThreads = dispatchThreads;
+		return this;
+	}
+
+	/**
+	 * Returns the number of notifications buffered per vehicle for asynchronous dispatch.
+	 *
+	 * @return the buffer size
+	 */
+	public int getDispatchBufferSize() {
+		return dispatchBufferSize;
+	}
+
+	/**
+	 * Sets the number of notifications buffered per vehicle for asynchronous dispatch. Default is 256.
+	 *
+	 * @param dispatchBufferSize the buffer size
+	 * @return this configuration
+	 */
+	public Configuration setDispatchBufferSize(int dispatchBufferSize) {
+		this.dispatchBufferSize = dispatchBufferSize;
+		return this;
+	}
+
+	/**
+	 * Returns what to do if the dispatch buffer of a vehicle is full.
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets what to do if the dispatch buffer of a vehicle is full. Default is {@link OverflowPolicy#DROP_OLDEST}.
+	 *
+	 * @param overflowPolicy the overflow policy
+	 * @return this configuration
+	 */
+	public Configuration setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+		return this;
+	}
+
+	/**
+	 * Returns the number of notifications buffered per subscriber of a publisher, see {@link Vehicle#publisher(Class)}.
+	 *
+	 * @return the buffer size
+	 */
+	public int getPublisherBufferSize() {
+		return publisherBufferSize;
+	}
+
+	/**
+	 * Sets the number of notifications buffered per subscriber of a publisher. Default is {@link Flow#defaultBufferSize()}.
+	 *
+	 * @param publisherBufferSize the buffer size
+	 * @return this configuration
+	 */
+	public Configuration setPublisherBufferSize(int publisherBufferSize) {
+		this.publisherBufferSize = publisherBufferSize;
+		return this;
+	}
+
+	/**
+	 * Returns what to do if the buffer of a subscriber is full.
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getPublisherOverflowPolicy() {
+		return publisherOverflowPolicy;
+	}
+
+	/**
+	 * Sets what to do if the buffer of a subscriber is full, i.e. the subscriber requests too slowly.
+	 * {@link OverflowPolicy#BLOCK} holds the dispatch of notifications of the vehicle. Default is {@link OverflowPolicy#DROP_OLDEST}.
+	 *
+	 * @param publisherOverflowPolicy the overflow policy
+	 * @return this configuration
+	 */
+	public Configuration setPublisherOverflowPolicy(OverflowPolicy publisherOverflowPolicy) {
+		this.publisherOverflowPolicy = publisherOverflowPolicy;
+		return this;
+	}
+
+	/**
+	 * Returns the number of threads running control loops, see {@link ControlLoop}.
+	 *
+	 * @return the number of threads
+	 */
+	public int getControlLoopThreads() {
+		return controlLoopThreads;
+	}
+
+	/**
+	 * Sets the number of threads running control loops. These are platform threads, even with virtual threads
+	 * configured, to keep timing predictable. Default is 2.
+	 *
+	 * @param controlLoopThreads the number of threads
+	 * @return this configuration
+	 */
+	public Configuration setControlLoopThreads(int controlLoopThreads) {
+		this.controlLoopThreads = controlLoopThreads;
+		return this;
+	}
+
+	/**
+	 * Returns the adapter-wide number of messages written per second, 0 if unlimited.
+	 *
+	 * @return the write rate
+	 */
+	public double getWriteRate() {
+		return writeRate;
+	}
+
+	/**
+	 * Sets the adapter-wide number of messages written per second, shared by all vehicles by weighted round-robin,
+	 * see {@link Vehicle#setWriteWeight(int)}. Default is 0, i.e. unlimited.
+	 *
+	 * @param writeRate the write rate, 0 if unlimited
+	 * @return this configuration
+	 */
+	public Configuration setWriteRate(double writeRate) {
+		this.writeRate = writeRate;
+		return this;
+	}
+
+	/**
+	 * Returns the number of messages written at once after a pause, if the write rate is limited.
+	 *
+	 * @return the write burst
+	 */
+	public int getWriteBurst() {
+		return writeBurst;
+	}
+
+	/**
+	 * Sets the number of messages written at once after a pause, if the write rate is limited. Default is 5.
+	 *
+	 * @param writeBurst the write burst
+	 * @return this configuration
+	 */
+	public Configuration setWriteBurst(int writeBurst) {
+		this.writeBurst = writeBurst;
+		return this;
+	}
+
+	/**
+	 * Returns the directory of the notification journal, null if journaling is disabled.
+	 *
+	 * @return the journal directory
+	 */
+	public Path getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	/**
+	 * Record every raw value notification in a {@link de.pdbm.janki.core.journal.Journal} in this directory.
+	 * Default is null, i.e. no journal.
+	 *
+	 * @param journalDirectory the journal directory
+	 * @return this configuration
+	 */
+	public Configuration setJournalDirectory(Path journalDirectory) {
+		this.journalDirectory = journalDirectory;
+		return this;
+	}
+
+	/**
+	 * Returns the size of a journal segment file in bytes.
+	 *
+	 * @return the segment size
+	 */
+	public int getJournalSegmentSize() {
+		return journalSegmentSize;
+	}
+
+	/**
+	 * Sets the size of a journal segment file in bytes. Default is 64 MB.
+	 *
+	 * @param journalSegmentSize the segment size
+	 * @return this configuration
+	 */
+	public Configuration setJournalSegmentSize(int journalSegmentSize) {
+		this.journalSegmentSize = journalSegmentSize;
+		return this;
+	}
+
+	/**
+	 * Returns true, if metrics of vehicles and the fleet are registered as JMX MBeans.
+	 *
+	 * @return true, if MBeans are registered
+	 */
+	public boolean isJmx() {
+		return jmx;
+	}
+
+	/**
+	 * Register metrics of every vehicle and of the fleet as JMX MBeans, see {@link VehicleMetricsMBean}
+	 * and {@link FleetMetricsMBean}. Default is true.
+	 *
+	 * @param jmx true, if MBeans should be registered
+	 * @return this configuration
+	 */
+	public Configuration setJmx(boolean jmx) {
+		this.jmx = jmx;
+		return this;
+	}
+
+	/**
+	 * Returns the interval of pinging connected vehicles to measure round trip times.
+	 *
+	 * @return the ping interval, null if vehicles are not pinged
+	 */
+	public Duration getPingInterval() {
+		return pingInterval;
+	}
+
+	/**
+	 * Ping every connected vehicle at this interval, see {@link Vehicle#getRoundTripTime(double)}.
+	 * Default is null, i.e. no pings, because every ping uses the BLE link.
+	 *
+	 * @param pingInterval the ping interval
+	 * @return this configuration
+	 */
+	public Configuration setPingInterval(Duration pingInterval) {
+		this.pingInterval = pingInterval;
+		return this;
+	}
+
+	/**
+	 * Returns true, if vehicles are reconnected after losing their connection.
+	 *
+	 * @return true, if vehicles are reconnected
+	 */
+	public boolean isReconnect() {
+		return reconnect;
+	}
+
+	/**
+	 * Reconnect vehicles immediately after losing their connection and restore SDK mode, speed and lane. Default is true.
+	 *
+	 * @param reconnect true, if vehicles should be reconnected
+	 * @return this configuration
+	 */
+	public Configuration setReconnect(boolean reconnect) {
+		this.reconnect = reconnect;
+		return this;
+	}
+
+	/**
+	 * Returns the backoff after the first failed reconnect attempt.
+	 *
+	 * @return the initial backoff
+	 */
+	public Duration getReconnectInitialBackoff() {
+		return reconnectInitialBackoff;
+	}
+
+	/**
+	 * Sets the backoff after the first failed reconnect attempt, doubled for every further attempt. Default is 100 ms.
+	 *
+	 * @param reconnectInitialBackoff the initial backoff
+	 * @return this configuration
+	 */
+	public Configuration setReconnectInitialBackoff(Duration reconnectInitialBackoff) {
+		this.reconnectInitialBackoff = reconnectInitialBackoff;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum backoff between reconnect attempts.
+	 *
+	 * @return the maximum backoff
+	 */
+	public Duration getReconnectMaxBackoff() {
+		return reconnectMaxBackoff;
+	}
+
+	/**
+	 * Sets the maximum backoff between reconnect attempts. Default is 10 seconds.
+	 *
+	 * @param reconnectMaxBackoff the maximum backoff
+	 * @return this configuration
+	 */
+	public Configuration setReconnectMaxBackoff(Duration reconnectMaxBackoff) {
+		this.reconnectMaxBackoff = reconnectMaxBackoff;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of simultaneous reconnect attempts.
+	 *
+	 * @return the maximum number of reconnect attempts
+	 */
+	public int getMaxConcurrentReconnects() {
+		return maxConcurrentReconnects;
+	}
+
+	/**
+	 * Sets the maximum number of simultaneous reconnect attempts. Default is 1, because BLE adapters
+	 * handle one connection attempt at a time best. TinyB connections are serialized anyway.
+	 *
+	 * @param maxConcurrentReconnects the maximum number of reconnect attempts
+	 * @return this configuration
+	 */
+	public Configuration setMaxConcurrentReconnects(int maxConcurrentReconnects) {
+		this.maxConcurrentReconnects = maxConcurrentReconnects;
+		return this;
+	}
+
+	/**
+	 * Returns true, if blocking work runs on virtual threads.
+	 *
+	 * @return true, if virtual threads are used
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Run blocking work on virtual threads: initialization of every vehicle, reconnects and command writes.
+	 * Default is false, i.e. platform threads.
+	 *
+	 * @param virtualThreads true, if virtual threads should be used
+	 * @return this configuration
+	 */
+	public Configuration setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * Returns the policy deciding when a vehicle is evicted.
+	 *
+	 * @return the eviction policy
+	 */
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Sets the policy deciding when a vehicle is evicted, checked with every update of devices.
+	 * Default evicts vehicles not connected and not seen for 100 seconds.
+	 *
+	 * @param evictionPolicy the eviction policy, e.g. {@link EvictionPolicy#NEVER}
+	 * @return this configuration
+	 */
+	public Configuration setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+		return this;
+	}
+
+}
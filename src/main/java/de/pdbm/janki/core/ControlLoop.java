@@ -0,0 +1,344 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdate;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+/**
+ * Runs a {@link Controller} of a vehicle at a fixed rate, e.g. for cruise control or spacing.
+ * <p>
+ *
+ * All loops share a small pool of platform threads, see {@link Configuration#setControlLoopThreads(int)}, so dozens of
+ * vehicles are controlled without a thread each. Every tick gets the latest position and transition update of the vehicle.
+ * The delay of every tick behind its schedule is recorded as jitter. A tick starting more than one period late is
+ * skipped and counted as overrun, so a slow controller does not cause a burst of late ticks. Ticks are skipped silently
+ * while the vehicle is not connected. After a loop is stopped, its controller cannot issue commands anymore.
+ *
+ * <pre>
+ * ControlLoop loop = ControlLoop.start(vehicle, Duration.ofMillis(20), tick -&gt; tick.setSpeed(...));
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public final class ControlLoop {
+
+	private static ScheduledThreadPoolExecutor executor; // created lazily, guarded by class
+
+	private static final Collection<ControlLoop> loops = ConcurrentHashMap.newKeySet();
+
+	private final Vehicle vehicle;
+	private final Controller controller;
+	private final long period;
+	private final StateListener listener = new StateListener();
+	private final ScheduledFuture<?> future;
+	private final ReentrantLock running = new ReentrantLock(); // held while a tick runs
+	private volatile boolean stopped;
+
+	private long start; // nano time of the first tick, only accessed by ticks
+	private long scheduled; // number of ticks run, the executor never runs ticks of a loop concurrently
+
+	private final LongAdder ticks = new LongAdder();
+	private final LongAdder overruns = new LongAdder();
+	private final LatencyHistogram jitter = new LatencyHistogram();
+
+	private volatile PositionUpdate positionUpdate;
+	private volatile TransitionUpdate transitionUpdate;
+	private volatile long positionUpdateTime; // nano time of last position update
+
+	private ControlLoop(Vehicle vehicle, Duration period, Controller controller) {
+		this.vehicle = vehicle;
+		this.controller = controller;
+		this.period = period.toNanos();
+		vehicle.addNotificationListener(listener);
+		ScheduledThreadPoolExecutor executor = executor(); // before scheduling, creating it takes time
+		this.future = executor.scheduleAtFixedRate(this::tick, 0, this.period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Starts a control loop.
+	 *
+	 * @param vehicle the vehicle to control
+	 * @param period the period, e.g. 10 ms to 50 ms for 100 Hz to 20 Hz
+	 * @param controller the controller
+	 * @return the running loop
+	 */
+	public static ControlLoop start(Vehicle vehicle, Duration period, Controller controller) {
+		if (period.isNegative() || period.isZero()) {
+			throw new IllegalArgumentException("period must be positive: " + period);
+		}
+		ControlLoop loop = new ControlLoop(vehicle, period, controller);
+		loops.add(loop);
+		return loop;
+	}
+
+	/**
+	 * Stops this loop. A running tick is completed, but its commands are ignored.
+	 */
+	public void stop() {
+		stopped = true;
+		future.cancel(false);
+		vehicle.removeNotificationListener(listener);
+		loops.remove(this);
+	}
+
+	/**
+	 * Stops all loops. Called by {@link JAnki#stop()}.
+	 */
+	static void stopAll() {
+		loops.forEach(ControlLoop::stop);
+	}
+
+	/**
+	 * Stops all loops and waits for running ticks, so no controller sets a speed afterwards. Called by {@link JAnki#shutdown(Duration)}.
+	 *
+	 * @param deadline the nano time to wait at most until
+	 */
+	static void stopAll(long deadline) {
+		Collection<ControlLoop> stopped = new ArrayList<>(loops);
+		stopped.forEach(ControlLoop::stop);
+		for (ControlLoop loop : stopped) {
+			if (!loop.running.isHeldByCurrentThread()) { // not stopped by its own controller
+				try {
+					if (loop.running.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+						loop.running.unlock();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops all loops of a vehicle. Called by {@link JAnki#evict(Vehicle)}.
+	 *
+	 * @param vehicle the vehicle
+	 */
+	static void stopAll(Vehicle vehicle) {
+		for (ControlLoop loop : loops) {
+			if (loop.vehicle.equals(vehicle)) {
+				loop.stop();
+			}
+		}
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor executor() {
+		if (executor == null) {
+			Configuration configuration = JAnki.configuration();
+			executor = new ScheduledThreadPoolExecutor(configuration == null ? 2 : configuration.getControlLoopThreads(),
+					Threads.factory("janki-control", false));
+			executor.setRemoveOnCancelPolicy(true);
+		}
+		return executor;
+	}
+
+	private void tick() {
+		long now = System.nanoTime();
+		if (scheduled == 0) { // lateness is measured from the first tick, not from a time before scheduling
+			start = now;
+		}
+		long late = now - (start + scheduled * period);
+		scheduled++;
+		if (late >= period) { // the executor runs missed ticks at once, skip them until back on schedule
+			overruns.increment();
+			vehicle.metrics.controlOverruns.increment();
+			return;
+		}
+		jitter.record(late);
+		vehicle.metrics.controlJitter.record(late);
+		if (!vehicle.isConnected()) {
+			return;
+		}
+		running.lock();
+		try {
+			if (stopped) {
+				return;
+			}
+			ticks.increment();
+			controller.control(new Tick(now));
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			running.unlock();
+		}
+	}
+
+	/**
+	 * Returns the vehicle of this loop.
+	 *
+	 * @return the vehicle
+	 */
+	public Vehicle getVehicle() {
+		return vehicle;
+	}
+
+	/**
+	 * Returns true, if this loop is stopped.
+	 *
+	 * @return true, if stopped
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Returns the number of ticks the controller was called.
+	 *
+	 * @return number of ticks
+	 */
+	public long getTicks() {
+		return ticks.sum();
+	}
+
+	/**
+	 * Returns the number of ticks skipped because they started more than one period late.
+	 *
+	 * @return number of overruns
+	 */
+	public long getOverruns() {
+		return overruns.sum();
+	}
+
+	/**
+	 * Returns a percentile of the delay of ticks behind their schedule.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the jitter in nanoseconds, at most 12.5% above the exact value
+	 */
+	public long getJitter(double percentile) {
+		return jitter.getPercentile(percentile);
+	}
+
+	/**
+	 * Returns the maximum delay of a tick behind its schedule.
+	 *
+	 * @return the maximum jitter in nanoseconds
+	 */
+	public long getMaxJitter() {
+		return jitter.getMax();
+	}
+
+	/**
+	 * State of the vehicle handed to the controller.
+	 */
+	public final class Tick {
+
+		private final long time;
+
+		private Tick(long time) {
+			this.time = time;
+		}
+
+		public Vehicle getVehicle() {
+			return vehicle;
+		}
+
+		/**
+		 * Returns the time of this tick.
+		 *
+		 * @return the time, as {@link System#nanoTime()}
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the latest position update.
+		 *
+		 * @return the position update, null if none received since the loop was started
+		 */
+		public PositionUpdate getPositionUpdate() {
+			return positionUpdate;
+		}
+
+		/**
+		 * Returns the age of the latest position update.
+		 *
+		 * @return the age in nanoseconds, {@code Long.MAX_VALUE} if none received
+		 */
+		public long getPositionUpdateAge() {
+			return positionUpdate == null ? Long.MAX_VALUE : time - positionUpdateTime;
+		}
+
+		/**
+		 * Returns the latest transition update.
+		 *
+		 * @return the transition update, null if none received since the loop was started
+		 */
+		public TransitionUpdate getTransitionUpdate() {
+			return transitionUpdate;
+		}
+
+		/**
+		 * Returns the last commanded speed.
+		 *
+		 * @return the speed
+		 */
+		public int getSpeed() {
+			return vehicle.getSpeed();
+		}
+
+		/**
+		 * Returns the last commanded lane offset.
+		 *
+		 * @return the offset, NaN if the lane was never changed
+		 */
+		public float getLaneOffset() {
+			return vehicle.getLaneOffset();
+		}
+
+		/**
+		 * Sets the speed, if it differs from the last commanded speed, so a loop does not flood the link with equal commands.
+		 * Ignored after the loop is stopped.
+		 *
+		 * @param speed the speed
+		 */
+		public void setSpeed(int speed) {
+			if (!stopped && speed != vehicle.getSpeed()) {
+				vehicle.setSpeed(speed);
+			}
+		}
+
+		/**
+		 * Changes the lane, if the offset differs from the last commanded offset. Ignored after the loop is stopped.
+		 *
+		 * @param offset the offset from road center
+		 */
+		public void changeLane(float offset) {
+			if (!stopped && Float.compare(offset, vehicle.getLaneOffset()) != 0) {
+				vehicle.changeLane(offset);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the latest updates. Registering it also makes position and transition updates observed, so they are parsed.
+	 */
+	private final class StateListener implements PositionUpdateListener, TransitionUpdateListener {
+
+		@Override
+		public void onPositionUpdate(PositionUpdate positionUpdate) {
+			positionUpdateTime = System.nanoTime();
+			ControlLoop.this.positionUpdate = positionUpdate;
+		}
+
+		@Override
+		public void onTransitionUpdate(TransitionUpdate transitionUpdate) {
+			ControlLoop.this.transitionUpdate = transitionUpdate;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package de.pdbm.janki.core;
+
+/**
+ * Controller of a vehicle, called periodically by a {@link ControlLoop}.
+ *
+ * @author bernd
+ *
+ */
+@FunctionalInterface
+public interface Controller {
+
+	/**
+	 * Called once per period on a control loop thread. Commands are issued by {@link ControlLoop.Tick#setSpeed(int)}
+	 * and {@link ControlLoop.Tick#changeLane(float)}, which go through the vehicle's command queue.
+	 * <p>
+	 * A controller must return well within the period, otherwise ticks are skipped and counted as overruns.
+	 *
+	 * @param tick the latest state of the vehicle
+	 */
+	void control(ControlLoop.Tick tick);
+
+}
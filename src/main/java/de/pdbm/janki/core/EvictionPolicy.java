@@ -0,0 +1,42 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+
+/**
+ * Decides when a vehicle is stale and is evicted, see {@link Configuration#setEvictionPolicy(EvictionPolicy)}.
+ * <p>
+ *
+ * An evicted vehicle is removed from the list of known vehicles, its listeners are removed and the resources of its
+ * transport are released. If it shows up again, it is discovered as a new vehicle.
+ *
+ * @author bernd
+ *
+ */
+@FunctionalInterface
+public interface EvictionPolicy {
+
+	/**
+	 * Never evict vehicles.
+	 */
+	EvictionPolicy NEVER = (vehicle, notSeen) -> false;
+
+	/**
+	 * Returns true, if the vehicle should be evicted.
+	 *
+	 * @param vehicle the vehicle
+	 * @param notSeen time since the vehicle was seen by discovery the last time
+	 * @return true, if the vehicle is stale
+	 */
+	boolean isStale(Vehicle vehicle, Duration notSeen);
+
+	/**
+	 * Evicts vehicles which are not connected and not seen for the given time.
+	 *
+	 * @param timeout the time a vehicle may be missing
+	 * @return the eviction policy
+	 */
+	static EvictionPolicy notSeenFor(Duration timeout) {
+		return (vehicle, notSeen) -> !vehicle.isConnected() && notSeen.compareTo(timeout) >= 0;
+	}
+
+}
@@ -0,0 +1,132 @@
+package de.pdbm.janki.core;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of all known vehicles, aggregated on read from {@link VehicleMetrics}.
+ *
+ * @author bernd
+ *
+ */
+class FleetMetrics implements FleetMetricsMBean {
+
+	static final String OBJECT_NAME = "de.pdbm.janki:type=Fleet";
+
+	@Override
+	public int getVehicles() {
+		return Vehicle.registry.snapshot().size();
+	}
+
+	@Override
+	public int getConnectedVehicles() {
+		return (int) Vehicle.registry.snapshot().stream().filter(Vehicle::isConnected).count();
+	}
+
+	@Override
+	public long getNotifications() {
+		return sum(VehicleMetrics::getNotifications);
+	}
+
+	@Override
+	public long getParseErrors() {
+		return sum(VehicleMetrics::getParseErrors);
+	}
+
+	@Override
+	public long getSkippedNotifications() {
+		return sum(VehicleMetrics::getSkippedNotifications);
+	}
+
+	@Override
+	public long getDroppedNotifications() {
+		return sum(VehicleMetrics::getDroppedNotifications);
+	}
+
+	@Override
+	public long getPublisherDrops() {
+		return sum(VehicleMetrics::getPublisherDrops) + JAnki.publisherDrops();
+	}
+
+	@Override
+	public long getListenerTimeP99() {
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		Vehicle.registry.snapshot().forEach(vehicle -> vehicle.metrics.listenerTime.addTo(buckets));
+		return LatencyHistogram.percentile(buckets, 99);
+	}
+
+	@Override
+	public long getWrites() {
+		return sum(VehicleMetrics::getWrites);
+	}
+
+	@Override
+	public long getWriteFailures() {
+		return sum(VehicleMetrics::getWriteFailures);
+	}
+
+	@Override
+	public long getWriteLatencyP50() {
+		return writeLatencyPercentile(50);
+	}
+
+	@Override
+	public long getWriteLatencyP99() {
+		return writeLatencyPercentile(99);
+	}
+
+	@Override
+	public long getPingsLost() {
+		return sum(VehicleMetrics::getPingsLost);
+	}
+
+	@Override
+	public long getPingRoundTripP99() {
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		Vehicle.registry.snapshot().forEach(vehicle -> vehicle.metrics.pingRoundTrip.addTo(buckets));
+		return LatencyHistogram.percentile(buckets, 99);
+	}
+
+	@Override
+	public long getReconnects() {
+		return sum(VehicleMetrics::getReconnects);
+	}
+
+	@Override
+	public long getRecoveryTimeP99() {
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		Vehicle.registry.snapshot().forEach(vehicle -> vehicle.metrics.recoveryTime.addTo(buckets));
+		return LatencyHistogram.percentile(buckets, 99);
+	}
+
+	@Override
+	public long getControlOverruns() {
+		return sum(VehicleMetrics::getControlOverruns);
+	}
+
+	@Override
+	public long getControlJitterP99() {
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		Vehicle.registry.snapshot().forEach(vehicle -> vehicle.metrics.controlJitter.addTo(buckets));
+		return LatencyHistogram.percentile(buckets, 99);
+	}
+
+	@Override
+	public long getThrottledWrites() {
+		return sum(VehicleMetrics::getThrottledWrites);
+	}
+
+	private long writeLatencyPercentile(double percentile) {
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		Vehicle.registry.snapshot().forEach(vehicle -> vehicle.getCommandQueue().writeLatency.addTo(buckets));
+		return LatencyHistogram.percentile(buckets, percentile);
+	}
+
+	private static long sum(ToLongFunction<VehicleMetrics> metric) {
+		long sum = 0;
+		for (Vehicle vehicle : Vehicle.registry.snapshot()) {
+			sum += metric.applyAsLong(vehicle.metrics);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,52 @@
+package de.pdbm.janki.core;
+
+/**
+ * JMX view of the metrics of all known vehicles, registered as {@code de.pdbm.janki:type=Fleet}.
+ * <p>
+ *
+ * Counters are sums over all vehicles, latency percentiles are computed from the merged histograms.
+ *
+ * @author bernd
+ *
+ */
+public interface FleetMetricsMBean {
+
+	int getVehicles();
+
+	int getConnectedVehicles();
+
+	long getNotifications();
+
+	long getParseErrors();
+
+	long getSkippedNotifications();
+
+	long getDroppedNotifications();
+
+	long getPublisherDrops();
+
+	long getListenerTimeP99();
+
+	long getWrites();
+
+	long getWriteFailures();
+
+	long getWriteLatencyP50();
+
+	long getWriteLatencyP99();
+
+	long getPingsLost();
+
+	long getPingRoundTripP99();
+
+	long getReconnects();
+
+	long getRecoveryTimeP99();
+
+	long getControlOverruns();
+
+	long getControlJitterP99();
+
+	long getThrottledWrites();
+
+}
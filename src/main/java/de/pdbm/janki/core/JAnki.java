@@ -0,0 +1,448 @@
+package de.pdbm.janki.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import de.pdbm.janki.core.journal.Journal;
+import de.pdbm.janki.core.notifications.Notification;
+
+/**
+ * Entry point of the JAnki runtime.
+ * <p>
+ *
+ * {@link #start(Configuration)} returns immediately, discovery and initialization of vehicles run in background.
+ * Vehicles are reported as soon as they are ready, i.e. connected and read and write characteristics are set:
+ *
+ * <pre>
+ * JAnki.onVehicleReady(vehicle -&gt; vehicle.addNotificationListener(...));
+ * Vehicle first = JAnki.start(new Configuration()).get(10, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public final class JAnki {
+
+	private static final CompletableFuture<Vehicle> firstVehicle = new CompletableFuture<>();
+
+	private static final Collection<Vehicle> readyVehicles = ConcurrentHashMap.newKeySet();
+
+	private static final List<Consumer<Vehicle>> vehicleListeners = new CopyOnWriteArrayList<>();
+
+	private static final List<AwaitedVehicles> awaitedVehicles = new CopyOnWriteArrayList<>();
+
+	private static final List<BiConsumer<Vehicle, Duration>> recoveryListeners = new CopyOnWriteArrayList<>();
+
+	private static final List<Consumer<Vehicle>> evictionListeners = new CopyOnWriteArrayList<>();
+
+	private static Configuration configuration;
+
+	private static volatile Journal journal; // null if journaling is disabled
+
+	private static LatencyProbe latencyProbe; // null if pinging is disabled
+
+	private static volatile ReconnectManager reconnectManager; // null if reconnecting is disabled
+
+	private static volatile WriteScheduler writeScheduler; // null if the write rate is unlimited
+
+	private static volatile NotificationPublishers publishers; // created on first call of publisher(...)
+
+	private JAnki() {
+	}
+
+	/**
+	 * Starts JAnki, i.e. discovery and initialization of vehicles, in background.
+	 * <p>
+	 * Further calls return the same future and do not change the configuration.
+	 *
+	 * @param configuration the configuration
+	 * @return future completing with the first ready vehicle
+	 */
+	public static synchronized CompletableFuture<Vehicle> start(Configuration configuration) {
+		if (JAnki.configuration == null) {
+			JAnki.configuration = configuration;
+			if (configuration.getJournalDirectory() != null) {
+				try {
+					journal = new Journal(configuration.getJournalDirectory(), configuration.getJournalSegmentSize());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (configuration.isShutdownHook()) {
+				Runtime.getRuntime().addShutdownHook(new Thread(JAnki::disconnectAll));
+			}
+			if (configuration.getWriteRate() > 0) {
+				writeScheduler = new WriteScheduler(configuration.getWriteRate(), configuration.getWriteBurst());
+			}
+			if (configuration.isReconnect()) {
+				reconnectManager = new ReconnectManager(configuration, JAnki::vehicleRecovered);
+			}
+			System.out.println("Initializing JAnki in background ...");
+			configuration.getTransport().start(configuration, new TransportContext());
+			if (configuration.getPingInterval() != null) {
+				latencyProbe = new LatencyProbe(configuration);
+			}
+		}
+		return firstVehicle;
+	}
+
+	/**
+	 * Stops discovery and initialization of vehicles and disconnects all vehicles.
+	 */
+	public static synchronized void stop() {
+		if (configuration != null) {
+			if (latencyProbe != null) {
+				latencyProbe.stop();
+			}
+			if (reconnectManager != null) {
+				reconnectManager.stop();
+			}
+			ControlLoop.stopAll();
+			configuration.getTransport().stop();
+			disconnectAll();
+			if (publishers != null) {
+				publishers.close();
+			}
+			if (journal != null) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true, if JAnki is started.
+	 *
+	 * @return true, if started
+	 */
+	public static synchronized boolean isStarted() {
+		return configuration != null;
+	}
+
+	/**
+	 * Returns the configuration JAnki was started with.
+	 *
+	 * @return the configuration, null if not started
+	 */
+	static synchronized Configuration configuration() {
+		return configuration;
+	}
+
+	/**
+	 * Disconnects all vehicles within the shutdown deadline, see {@link Configuration#getShutdownDeadline()}.
+	 */
+	static void disconnectAll() {
+		System.out.println("Disconnecting all devices...");
+		Configuration configuration = configuration();
+		ShutdownReport report = shutdown(configuration == null ? Duration.ofSeconds(5) : configuration.getShutdownDeadline());
+		if (!report.isComplete()) {
+			System.out.println(report);
+		}
+	}
+
+	/**
+	 * Stops and disconnects all vehicles, but waits not longer than the deadline.
+	 * <p>
+	 * Control loops are stopped and their running ticks awaited, then all connected vehicles get speed 0 at once, their stop commands jump the queues and are written in parallel.
+	 * Then all vehicles are disconnected. The stop phase may use half of the deadline, so a hanging stop does not
+	 * prevent disconnecting. Vehicles not disconnected after three quarters of the deadline are reported as failed and
+	 * their devices are disconnected without the disconnect message, on daemon threads which are awaited until the deadline.
+	 * Vehicles whose device is still disconnecting then are reported with a timeout. Hanging threads do not hold JVM exit.
+	 *
+	 * @param deadline the maximum time to wait
+	 * @return the report of disconnected and failed vehicles
+	 */
+	public static ShutdownReport shutdown(Duration deadline) {
+		long start = System.nanoTime();
+		long end = start + deadline.toNanos();
+		List<Vehicle> vehicles = Vehicle.registry.snapshot().stream().filter(vehicle -> !vehicle.isDetached()).collect(Collectors.toList());
+		Map<Vehicle, Throwable> failures = new LinkedHashMap<>();
+		ControlLoop.stopAll(start + deadline.toNanos() / 2); // no controller may set a speed after the stop phase
+
+		Map<Vehicle, CompletableFuture<Void>> stops = new LinkedHashMap<>();
+		for (Vehicle vehicle : vehicles) {
+			if (vehicle.isConnected()) {
+				stops.put(vehicle, vehicle.setSpeed(0));
+			}
+		}
+		await(stops, start + deadline.toNanos() / 2, failures);
+
+		Map<Vehicle, CompletableFuture<Void>> disconnects = new LinkedHashMap<>();
+		for (Vehicle vehicle : vehicles) {
+			disconnects.put(vehicle, vehicle.disconnect());
+		}
+		await(disconnects, end - deadline.toNanos() / 4, failures);
+
+		Executor disconnector = runnable -> Threads.factory("janki-disconnect", Threads.isVirtual()).newThread(runnable).start();
+		Map<Vehicle, CompletableFuture<Void>> forced = new LinkedHashMap<>();
+		for (Map.Entry<Vehicle, CompletableFuture<Void>> entry : disconnects.entrySet()) {
+			if (!entry.getValue().isDone()) { // disconnect message not written in time, disconnect the device anyway
+				forced.put(entry.getKey(), CompletableFuture.runAsync(entry.getKey().link::disconnect, disconnector));
+			}
+		}
+		Map<Vehicle, Throwable> forcedFailures = new LinkedHashMap<>();
+		await(forced, end, forcedFailures);
+		forcedFailures.forEach((vehicle, failure) -> failures.put(vehicle, // the device may still be connected, report that instead
+				failure instanceof TimeoutException ? new TimeoutException("device disconnect not finished before deadline") : failure));
+
+		ShutdownReport report = new ShutdownReport(vehicles, failures, Duration.ofNanos(System.nanoTime() - start));
+		Logger.log(LogType.CONNECTED_NOTIFICATION, "{}", report);
+		return report;
+	}
+
+	/**
+	 * Waits for the futures until the deadline and records the first failure of each vehicle.
+	 */
+	private static void await(Map<Vehicle, CompletableFuture<Void>> futures, long deadline, Map<Vehicle, Throwable> failures) {
+		for (Map.Entry<Vehicle, CompletableFuture<Void>> entry : futures.entrySet()) {
+			try {
+				entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (ExecutionException e) {
+				failures.putIfAbsent(entry.getKey(), e.getCause());
+			} catch (TimeoutException e) {
+				failures.putIfAbsent(entry.getKey(), new TimeoutException("deadline exceeded"));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.putIfAbsent(entry.getKey(), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the journal of raw value notifications.
+	 *
+	 * @return the journal, null if journaling is disabled
+	 */
+	static Journal journal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the reconnect manager.
+	 *
+	 * @return the reconnect manager, null if reconnecting is disabled or JAnki not started
+	 */
+	static ReconnectManager reconnectManager() {
+		return reconnectManager;
+	}
+
+	/**
+	 * Returns a publisher of the notifications of the given type of all vehicles, see {@link Vehicle#publisher(Class)}.
+	 * <p>
+	 * Subscribers are completed by {@link #stop()}.
+	 *
+	 * @param <T> the notification type
+	 * @param type the notification type
+	 * @return the publisher
+	 * @throws IllegalArgumentException if notifications of this type are not published
+	 */
+	public static <T extends Notification> Flow.Publisher<T> publisher(Class<T> type) {
+		return publishers().get(type);
+	}
+
+	/**
+	 * Returns the fleet publishers, created with the configuration of the first call.
+	 *
+	 * @return the publishers
+	 */
+	static synchronized NotificationPublishers publishers() {
+		if (publishers == null) {
+			publishers = new NotificationPublishers(configuration);
+		}
+		return publishers;
+	}
+
+	/**
+	 * Returns the number of notifications dropped by fleet subscribers.
+	 *
+	 * @return number of dropped notifications
+	 */
+	static long publisherDrops() {
+		NotificationPublishers publishers = JAnki.publishers;
+		return publishers == null ? 0 : publishers.getDropped();
+	}
+
+	/**
+	 * Returns true, if a fleet subscriber is interested in messages with this ID.
+	 *
+	 * @param msgId the message ID
+	 * @return true, if observed
+	 */
+	static boolean observes(byte msgId) {
+		NotificationPublishers publishers = JAnki.publishers;
+		return publishers != null && publishers.observes(msgId);
+	}
+
+	/**
+	 * Offers a notification to the fleet subscribers. Called by every vehicle.
+	 *
+	 * @param notification the notification
+	 */
+	static void publish(Notification notification) {
+		NotificationPublishers publishers = JAnki.publishers;
+		if (publishers != null) {
+			publishers.publish(notification);
+		}
+	}
+
+	/**
+	 * Returns the adapter-wide write scheduler.
+	 *
+	 * @return the write scheduler, null if the write rate is unlimited or JAnki not started
+	 */
+	static WriteScheduler writeScheduler() {
+		return writeScheduler;
+	}
+
+	/**
+	 * Returns a future completing when the given number of vehicles is ready.
+	 *
+	 * @param count number of vehicles to wait for
+	 * @return future completing with the ready vehicles
+	 */
+	public static CompletableFuture<List<Vehicle>> awaitVehicles(int count) {
+		AwaitedVehicles awaited = new AwaitedVehicles(count);
+		awaitedVehicles.add(awaited);
+		awaited.check();
+		return awaited.future;
+	}
+
+	/**
+	 * Registers a listener called for every vehicle becoming ready.
+	 * <p>
+	 * The listener is called immediately for vehicles already ready, so no vehicle is missed.
+	 * Listeners must return quickly, they are called by the JAnki initialization thread.
+	 *
+	 * @param listener the listener
+	 */
+	public static void onVehicleReady(Consumer<Vehicle> listener) {
+		vehicleListeners.add(listener);
+		readyVehicles.forEach(listener);
+	}
+
+	/**
+	 * Registers a listener called for every vehicle recovered from a lost connection, with the time from
+	 * losing the connection to restored speed and lane.
+	 * <p>
+	 * Listeners must return quickly, they are called by the reconnect thread.
+	 *
+	 * @param listener the listener
+	 */
+	public static void onVehicleRecovered(BiConsumer<Vehicle, Duration> listener) {
+		recoveryListeners.add(listener);
+	}
+
+	/**
+	 * Called by the reconnect manager after a vehicle is recovered.
+	 *
+	 * @param vehicle the recovered vehicle
+	 * @param timeToRecover time from losing the connection to restored state
+	 */
+	static void vehicleRecovered(Vehicle vehicle, Duration timeToRecover) {
+		for (BiConsumer<Vehicle, Duration> listener : recoveryListeners) {
+			try {
+				listener.accept(vehicle, timeToRecover);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Registers a listener called for every evicted vehicle, see {@link Configuration#setEvictionPolicy(EvictionPolicy)}.
+	 * <p>
+	 * The listener is called after the vehicle is removed, so references to it can be dropped.
+	 *
+	 * @param listener the listener
+	 */
+	public static void onVehicleEvicted(Consumer<Vehicle> listener) {
+		evictionListeners.add(listener);
+	}
+
+	/**
+	 * Evicts a vehicle: removes it from the known vehicles, removes its listeners and releases its transport resources.
+	 * <p>
+	 * Usually called by the eviction policy. If the vehicle shows up again, it is discovered as a new vehicle.
+	 *
+	 * @param vehicle the vehicle to evict
+	 * @return true, if the vehicle was known
+	 */
+	public static boolean evict(Vehicle vehicle) {
+		if (!Vehicle.registry.remove(vehicle)) {
+			return false;
+		}
+		readyVehicles.remove(vehicle);
+		ControlLoop.stopAll(vehicle);
+		if (writeScheduler != null) {
+			writeScheduler.remove(vehicle);
+		}
+		vehicle.release();
+		Logger.log(LogType.DEVICE_UPDATE, () -> vehicle.toShortString() + " evicted");
+		for (Consumer<Vehicle> listener : evictionListeners) {
+			try {
+				listener.accept(vehicle);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by the transport after a vehicle is initialized. Repeated calls for the same vehicle are ignored.
+	 *
+	 * @param vehicle the ready vehicle
+	 */
+	static void vehicleReady(Vehicle vehicle) {
+		vehicle.announced();
+		if (readyVehicles.add(vehicle)) {
+			Logger.log(LogType.DEVICE_INITIALIZATION, () -> vehicle.toShortString() + " ready");
+			firstVehicle.complete(vehicle);
+			for (Consumer<Vehicle> listener : vehicleListeners) {
+				try {
+					listener.accept(vehicle);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			awaitedVehicles.forEach(AwaitedVehicles::check);
+		}
+	}
+
+	private static final class AwaitedVehicles {
+
+		private final int count;
+		private final CompletableFuture<List<Vehicle>> future = new CompletableFuture<>();
+
+		private AwaitedVehicles(int count) {
+			this.count = count;
+		}
+
+		private void check() {
+			List<Vehicle> vehicles = new ArrayList<>(readyVehicles);
+			if (vehicles.size() >= count && future.complete(vehicles)) {
+				awaitedVehicles.remove(this);
+			}
+		}
+	}
+
+}
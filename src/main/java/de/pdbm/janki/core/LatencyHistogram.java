@@ -0,0 +1,136 @@
+package de.pdbm.janki.core;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded by several threads without contention.
+ * <p>
+ *
+ * Buckets are log-linear: every power of two is split into 8 buckets, so a percentile is
+ * at most 12.5% above the recorded value. Values above about 9 minutes go into the last bucket.
+ * Every bucket is a {@link LongAdder}, so recording threads do not contend on a shared counter.
+ *
+ * @author bernd
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 39;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency in nanoseconds, negative values are recorded as 0
+	 */
+	void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[index(value)].increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	long getCount() {
+		long count = 0;
+		for (LongAdder adder : counts) {
+			count += adder.sum();
+		}
+		return count;
+	}
+
+	long getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : sum.sum() / count;
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the percentile, as upper bound of the bucket containing it.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the percentile in nanoseconds, 0 if nothing is recorded
+	 */
+	long getPercentile(double percentile) {
+		long[] buckets = new long[BUCKETS];
+		addTo(buckets);
+		return percentile(buckets, percentile);
+	}
+
+	/**
+	 * Adds the counts of this histogram to the given buckets, to aggregate histograms.
+	 *
+	 * @param buckets array of length {@link #BUCKETS}
+	 */
+	void addTo(long[] buckets) {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] += counts[i].sum();
+		}
+	}
+
+	/**
+	 * Returns the sum of all recorded latencies.
+	 *
+	 * @return the sum in nanoseconds
+	 */
+	long getSum() {
+		return sum.sum();
+	}
+
+	static long percentile(long[] buckets, double percentile) {
+		long count = 0;
+		for (long bucket : buckets) {
+			count += bucket;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
@@ -0,0 +1,45 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background probe pinging every connected vehicle at a fixed interval, see {@link Configuration#setPingInterval(Duration)}.
+ * <p>
+ *
+ * Round trip times are kept per vehicle, see {@link Vehicle#getRoundTripTime(double)} and {@link VehicleMetricsMBean}.
+ * A rising percentile or lost pings show a degraded link before the vehicle starts ignoring commands.
+ *
+ * @author bernd
+ *
+ */
+final class LatencyProbe {
+
+	private final ScheduledExecutorService executor;
+
+	LatencyProbe(Configuration configuration) {
+		executor = Executors.newSingleThreadScheduledExecutor(Threads.factory("janki-ping", configuration.isVirtualThreads()));
+		long nanos = configuration.getPingInterval().toNanos();
+		executor.scheduleAtFixedRate(LatencyProbe::pingAll, nanos, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void stop() {
+		executor.shutdownNow();
+	}
+
+	private static void pingAll() {
+		for (Vehicle vehicle : Vehicle.registry.snapshot()) {
+			try {
+				if (!vehicle.isDetached() && vehicle.isConnected() && vehicle.link.isReady()) {
+					vehicle.ping();
+				}
+			} catch (Exception e) {
+				// an exception would cancel the periodic task
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
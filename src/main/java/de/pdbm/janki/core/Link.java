@@ -0,0 +1,58 @@
+package de.pdbm.janki.core;
+
+/**
+ * Connection of a single vehicle to its {@link Transport}.
+ * <p>
+ *
+ * Notifications of the vehicle are delivered by the transport through {@link TransportContext}.
+ *
+ * @author bernd
+ *
+ */
+public interface Link {
+
+	/**
+	 * Writes an Anki message to the vehicle. Called by the command queue of the vehicle only.
+	 *
+	 * @param message the Anki message
+	 * @return true, if the message was written
+	 * @throws IllegalStateException if the vehicle is not connected
+	 */
+	boolean write(byte[] message);
+
+	/**
+	 * Returns true, if the vehicle is connected.
+	 *
+	 * @return true, if connected
+	 */
+	boolean isConnected();
+
+	/**
+	 * Returns true, if messages can be written and notifications are received.
+	 *
+	 * @return true, if ready
+	 */
+	boolean isReady();
+
+	/**
+	 * Disconnects the vehicle. Called after the Anki disconnect message is written.
+	 */
+	void disconnect();
+
+	/**
+	 * Connects the vehicle again after the connection was lost and registers for value notifications again.
+	 * Called by the {@link ReconnectManager}, which restores SDK mode, speed and lane afterwards.
+	 * <p>
+	 * May block while connecting, but must not retry, retries are scheduled by the caller.
+	 *
+	 * @return true, if the vehicle is connected and ready
+	 */
+	boolean reconnect();
+
+	/**
+	 * Releases all resources of this link, e.g. native handles and notification registrations.
+	 * Called after the vehicle is evicted, the link is not used afterwards.
+	 */
+	void release();
+
+}
@@ -1,37 +1,278 @@
 package de.pdbm.janki.core;
 
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+/**
+ * Logger writing to {@value #LOG_FILE_NAME}.
+ * <p>
+ *
+ * Messages of switched off log types cost nothing: use {@link #log(LogType, String, Object)} or
+ * {@link #log(LogType, Supplier)} so the message is only built if the log type is switched on.
+ * Messages are put into a lock-free queue and written in batches by a background thread, so logging
+ * does not distort timing of the caller. The log file is rotated by size and high-rate log types
+ * can be sampled, see {@link #setSampling(LogType, int)}.
+ *
+ * @author bernd
+ *
+ */
 public class Logger {
 
 	static final String LOG_FILE_NAME = "janki.log";
 
-	private static final PrintStream logger;
-	
-	private static final Map<LogType, Boolean> logTypeSwitches = new ConcurrentHashMap<>();
-	
+	private static final Path LOG_FILE = Paths.get(LOG_FILE_NAME);
+
+	private static final AtomicIntegerArray logTypeSwitches = new AtomicIntegerArray(LogType.values().length); // index is ordinal, 1 if on
+
+	private static final AtomicIntegerArray samplingRates = new AtomicIntegerArray(LogType.values().length); // log every n-th message
+
+	private static final AtomicLongArray samplingCounters = new AtomicLongArray(LogType.values().length);
+
+	private static final Queue<String> queue = new ConcurrentLinkedQueue<>();
+
+	private static final AtomicLong enqueued = new AtomicLong();
+
+	private static volatile long written; // number of messages written and flushed
+
+	private static volatile long maxFileSize = 10 * 1024 * 1024;
+
+	private static volatile int maxBackups = 3;
+
+	private static Writer writer; // used by writer thread only after initialization
+
+	private static final Thread writerThread;
+
 	static {
-		Stream.of(LogType.values()).forEach(value -> logTypeSwitches.put(value, Boolean.FALSE));
-		PrintStream tmp = null;
+		for (int i = 0; i < samplingRates.length(); i++) {
+			samplingRates.set(i, 1);
+		}
 		try {
-			tmp= new PrintStream(LOG_FILE_NAME);
-		} catch (FileNotFoundException e) {
+			writer = open();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		logger = tmp;
+		writerThread = new Thread(Logger::writeLoop, "janki-logger");
+		writerThread.setDaemon(true);
+		writerThread.start();
 	}
-	
+
 	public static void switchLogTypeOn(LogType... types) {
-		Stream.of(types).forEach(value -> logTypeSwitches.put(value, Boolean.TRUE));
+		Stream.of(types).forEach(value -> logTypeSwitches.set(value.ordinal(), 1));
+	}
+
+	public static void switchLogTypeOff(LogType... types) {
+		Stream.of(types).forEach(value -> logTypeSwitches.set(value.ordinal(), 0));
 	}
-	
+
+	/**
+	 * Returns true, if the log type is switched on.
+	 *
+	 * @param logType the log type
+	 * @return true, if switched on
+	 */
+	public static boolean isEnabled(LogType logType) {
+		return logTypeSwitches.get(logType.ordinal()) != 0;
+	}
+
+	/**
+	 * Log only every n-th message of this log type. Default is 1, i.e. every message is logged.
+	 *
+	 * @param logType the log type
+	 * @param rate sampling rate, must be positive
+	 */
+	public static void setSampling(LogType logType, int rate) {
+		if (rate < 1) {
+			throw new IllegalArgumentException("sampling rate must be positive");
+		}
+		samplingRates.set(logType.ordinal(), rate);
+	}
+
+	/**
+	 * Sets the size of the log file which causes rotation. Default is 10 MB.
+	 *
+	 * @param bytes maximum size of the log file in bytes
+	 */
+	public static void setMaxFileSize(long bytes) {
+		maxFileSize = bytes;
+	}
+
+	/**
+	 * Sets the number of rotated log files to keep, i.e. {@code janki.log.1} to {@code janki.log.n}. Default is 3.
+	 *
+	 * @param backups number of rotated log files
+	 */
+	public static void setMaxBackups(int backups) {
+		maxBackups = backups;
+	}
+
 	public static void log(LogType logType, String text) {
-		if (logTypeSwitches.get(logType)) {
-			logger.println(text);
+		if (isLogged(logType)) {
+			enqueue(text);
+		}
+	}
+
+	/**
+	 * Logs the supplied message. The supplier is only called if the log type is switched on.
+	 *
+	 * @param logType the log type
+	 * @param message supplier of the message
+	 */
+	public static void log(LogType logType, Supplier<String> message) {
+		if (isLogged(logType)) {
+			enqueue(message.get());
+		}
+	}
+
+	/**
+	 * Logs the pattern with each {@code {}} replaced by the argument. The message is only built
+	 * if the log type is switched on. Arrays are formatted by their content.
+	 *
+	 * @param logType the log type
+	 * @param pattern the message pattern
+	 * @param arg the argument
+	 */
+	public static void log(LogType logType, String pattern, Object arg) {
+		if (isLogged(logType)) {
+			enqueue(format(pattern, arg));
+		}
+	}
+
+	/**
+	 * Logs the pattern with the first {@code {}} replaced by the first argument and the second
+	 * {@code {}} replaced by the second argument. The message is only built if the log type is switched on.
+	 *
+	 * @param logType the log type
+	 * @param pattern the message pattern
+	 * @param arg1 the first argument
+	 * @param arg2 the second argument
+	 */
+	public static void log(LogType logType, String pattern, Object arg1, Object arg2) {
+		if (isLogged(logType)) {
+			enqueue(format(pattern, arg1, arg2));
+		}
+	}
+
+	/**
+	 * Waits until all messages logged so far are written to the log file.
+	 */
+	public static void flush() {
+		long target = enqueued.get();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (written < target && System.nanoTime() < deadline) {
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(100_000);
 		}
 	}
+
+	private static boolean isLogged(LogType logType) {
+		int index = logType.ordinal();
+		if (logTypeSwitches.get(index) == 0) {
+			return false;
+		}
+		int rate = samplingRates.get(index);
+		return rate == 1 || samplingCounters.getAndIncrement(index) % rate == 0;
+	}
+
+	private static void enqueue(String message) {
+		queue.add(message);
+		enqueued.incrementAndGet();
+		LockSupport.unpark(writerThread);
+	}
+
+	static String format(String pattern, Object... args) {
+		StringBuilder sb = new StringBuilder(pattern.length() + 32);
+		int start = 0;
+		for (Object arg : args) {
+			int index = pattern.indexOf("{}", start);
+			if (index < 0) {
+				break;
+			}
+			sb.append(pattern, start, index).append(toString(arg));
+			start = index + 2;
+		}
+		return sb.append(pattern, start, pattern.length()).toString();
+	}
+
+	private static String toString(Object arg) {
+		if (arg instanceof byte[]) {
+			return Arrays.toString((byte[]) arg);
+		} else if (arg instanceof Object[]) {
+			return Arrays.deepToString((Object[]) arg);
+		}
+		return String.valueOf(arg);
+	}
+
+	/**
+	 * Loop of the writer thread: writes all queued messages, flushes once per batch and rotates the log file if necessary.
+	 */
+	private static void writeLoop() {
+		long fileSize = 0;
+		long count = 0;
+		while (true) {
+			try {
+				if (writer == null) {
+					writer = open();
+					fileSize = 0;
+				}
+				String message = queue.poll();
+				if (message == null) {
+					writer.flush();
+					written = count;
+					LockSupport.parkNanos(10_000_000);
+					continue;
+				}
+				while (message != null) {
+					writer.write(message);
+					writer.write(System.lineSeparator());
+					fileSize += message.length() + 1;
+					count++;
+					if (fileSize > maxFileSize) {
+						writer.close();
+						rotate();
+						writer = open();
+						fileSize = 0;
+					}
+					message = queue.poll();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				writer = null;
+				LockSupport.parkNanos(1_000_000_000L); // do not spin if file system is not writable
+			}
+		}
+	}
+
+	private static Writer open() throws IOException {
+		return Files.newBufferedWriter(LOG_FILE, StandardCharsets.UTF_8);
+	}
+
+	private static void rotate() throws IOException {
+		for (int i = maxBackups - 1; i >= 1; i--) {
+			Path source = Paths.get(LOG_FILE_NAME + "." + i);
+			if (Files.exists(source)) {
+				Files.move(source, Paths.get(LOG_FILE_NAME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if (maxBackups > 0) {
+			Files.move(LOG_FILE, Paths.get(LOG_FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(LOG_FILE);
+		}
+	}
+
 }
@@ -0,0 +1,65 @@
+package de.pdbm.janki.core;
+
+/**
+ * Conversion of MAC addresses between their textual form, e.g. {@code E4:0A:2C:13:31:5F}, 
+ * and a compact 48 bit representation stored in a long.
+ * 
+ * @author bernd
+ *
+ */
+public final class MacAddress {
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private MacAddress() {
+	}
+
+	/**
+	 * Converts a MAC address to its 48 bit representation.
+	 * 
+	 * @param mac MAC address as six hexadecimal bytes separated by colons
+	 * @return the MAC address as long
+	 * @throws IllegalArgumentException if the MAC address is malformed
+	 */
+	public static long toLong(String mac) {
+		if (mac == null || mac.length() != 17) {
+			throw new IllegalArgumentException("malformed MAC address " + mac);
+		}
+		long value = 0;
+		for (int i = 0; i < 17; i += 3) {
+			if (i > 0 && mac.charAt(i - 1) != ':') {
+				throw new IllegalArgumentException("malformed MAC address " + mac);
+			}
+			value = (value << 8) | (hexDigit(mac, i) << 4) | hexDigit(mac, i + 1);
+		}
+		return value;
+	}
+
+	/**
+	 * Converts the 48 bit representation of a MAC address to its textual form.
+	 * 
+	 * @param mac the MAC address as long
+	 * @return MAC address as six upper case hexadecimal bytes separated by colons
+	 */
+	public static String toString(long mac) {
+		char[] chars = new char[17];
+		for (int i = 0; i < 6; i++) {
+			int b = (int) (mac >>> (40 - 8 * i)) & 0xff;
+			chars[3 * i] = HEX_DIGITS[b >>> 4];
+			chars[3 * i + 1] = HEX_DIGITS[b & 0x0f];
+			if (i < 5) {
+				chars[3 * i + 2] = ':';
+			}
+		}
+		return new String(chars);
+	}
+
+	private static long hexDigit(String mac, int index) {
+		int digit = Character.digit(mac.charAt(index), 16);
+		if (digit < 0) {
+			throw new IllegalArgumentException("malformed MAC address " + mac);
+		}
+		return digit;
+	}
+
+}
@@ -0,0 +1,178 @@
+package de.pdbm.janki.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous dispatch of value notifications off the TinyB callback thread.
+ * <p>
+ * 
+ * Raw notification bytes are put into a bounded ring buffer per vehicle. The buffer is drained by one 
+ * of a small pool of single threaded workers. Every vehicle is bound to one worker, so notifications of a 
+ * vehicle are dispatched in order of reception, while a slow listener only delays vehicles sharing its worker.
+ * 
+ * @author bernd
+ *
+ */
+class NotificationDispatcher {
+
+	private static final int BATCH_SIZE = 64; // notifications drained before other vehicles of the worker get their turn
+
+	private static ExecutorService[] workers; // created lazily, guarded by class
+
+	private NotificationDispatcher() {
+	}
+
+	/**
+	 * Creates the buffer for a vehicle.
+	 * 
+	 * @param mac the vehicle's MAC address as long, used to choose the worker
+	 * @param configuration configuration with number of workers, buffer size and overflow policy
+	 * @param consumer called for every notification on the vehicle's worker thread
+	 * @return the buffer
+	 */
+	static Buffer bufferFor(long mac, Configuration configuration, Consumer<byte[]> consumer) {
+		return new Buffer(configuration.getDispatchBufferSize(), configuration.getOverflowPolicy(), 
+				workerFor(mac, configuration.getDispatchThreads()), consumer);
+	}
+
+	private static synchronized Executor workerFor(long mac, int threads) {
+		if (workers == null) {
+			workers = new ExecutorService[Math.max(1, threads)];
+			for (int i = 0; i < workers.length; i++) {
+				String name = "janki-dispatch-" + i;
+				workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+					Thread thread = new Thread(runnable, name);
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+		return workers[Math.floorMod(Long.hashCode(mac), workers.length)];
+	}
+
+	/**
+	 * Bounded ring buffer of the notifications of one vehicle.
+	 */
+	static final class Buffer {
+
+		private final byte[][] slots;
+		private final OverflowPolicy overflowPolicy;
+		private final Executor worker;
+		private final Consumer<byte[]> consumer;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notFull = lock.newCondition();
+		private int head; // guarded by lock
+		private int size; // guarded by lock
+		private boolean scheduled; // guarded by lock
+
+		private final LongAdder dropped = new LongAdder();
+
+		Buffer(int capacity, OverflowPolicy overflowPolicy, Executor worker, Consumer<byte[]> consumer) {
+			this.slots = new byte[capacity][];
+			this.overflowPolicy = overflowPolicy;
+			this.worker = worker;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Puts the notification into the buffer. Called by the TinyB callback thread, which hands over a new array
+		 * for every notification, so the array is buffered without copying.
+		 * 
+		 * @param bytes the Anki BLE message, must not be modified by the caller afterwards
+		 */
+		void offer(byte[] bytes) {
+			lock.lock();
+			try {
+				if (size == slots.length) {
+					switch (overflowPolicy) {
+					case DROP_NEWEST:
+						dropped.increment();
+						return;
+					case DROP_OLDEST:
+						slots[head] = null;
+						head = (head + 1) % slots.length;
+						size--;
+						dropped.increment();
+						break;
+					case BLOCK:
+						while (size == slots.length) {
+							notFull.await();
+						}
+						break;
+					}
+				}
+				slots[(head + size) % slots.length] = bytes;
+				size++;
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			} catch (InterruptedException e) {
+				dropped.increment();
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				lock.unlock();
+			}
+			worker.execute(this::drain);
+		}
+
+		private void drain() {
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				byte[] bytes;
+				lock.lock();
+				try {
+					if (size == 0) {
+						scheduled = false;
+						return;
+					}
+					bytes = slots[head];
+					slots[head] = null;
+					head = (head + 1) % slots.length;
+					size--;
+					notFull.signal();
+				} finally {
+					lock.unlock();
+				}
+				try {
+					consumer.accept(bytes);
+				} catch (Throwable t) {
+					worker.execute(this::drain); // still scheduled, keep draining after an error of a listener
+					throw t;
+				}
+			}
+			worker.execute(this::drain); // give other vehicles of this worker a chance
+		}
+
+		/**
+		 * Returns the number of notifications dropped because the buffer was full.
+		 * 
+		 * @return number of dropped notifications
+		 */
+		long getDropped() {
+			return dropped.sum();
+		}
+
+		/**
+		 * Returns the number of notifications waiting for dispatch.
+		 * 
+		 * @return number of buffered notifications
+		 */
+		int getSize() {
+			lock.lock();
+			try {
+				return size;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
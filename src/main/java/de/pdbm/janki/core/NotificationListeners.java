@@ -0,0 +1,282 @@
+package de.pdbm.janki.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotification;
+import de.pdbm.janki.core.notifications.ChargerInfoNotificationListener;
+import de.pdbm.janki.core.notifications.ConnectedNotification;
+import de.pdbm.janki.core.notifications.ConnectedNotificationListener;
+import de.pdbm.janki.core.notifications.Notification;
+import de.pdbm.janki.core.notifications.NotificationHandler;
+import de.pdbm.janki.core.notifications.NotificationListener;
+import de.pdbm.janki.core.notifications.NotificationParser;
+import de.pdbm.janki.core.notifications.PingResponse;
+import de.pdbm.janki.core.notifications.PingResponseListener;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdate;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+/**
+ * Listeners of a vehicle, organized as one copy-on-write array per notification type.
+ * <p>
+ *
+ * The arrays are rebuilt when a listener is added or removed, which is rare. Dispatching a notification
+ * reads one array and calls only listeners interested in this notification type, without any
+ * {@code instanceof} check on the BLE callback thread.
+ * <p>
+ *
+ * Weakly registered listeners are wrapped by a {@link WeakListener}, which forwards to the listener as long as it is
+ * reachable. Wrappers of collected listeners are purged when listeners are added and by {@link #purge()}.
+ * <p>
+ *
+ * A table of the message IDs with listeners is rebuilt together with the arrays, so a vehicle parses only messages
+ * somebody listens to, see {@link #needsParse(byte)}. Handlers decode without parsing and do not count.
+ *
+ * @author bernd
+ *
+ */
+class NotificationListeners {
+
+	private NotificationListener[] all = new NotificationListener[0]; // guarded by this
+
+	private volatile PositionUpdateListener[] positionUpdateListeners = new PositionUpdateListener[0];
+
+	private volatile TransitionUpdateListener[] transitionUpdateListeners = new TransitionUpdateListener[0];
+
+	private volatile ChargerInfoNotificationListener[] chargerInfoNotificationListeners = new ChargerInfoNotificationListener[0];
+
+	private volatile ConnectedNotificationListener[] connectedNotificationListeners = new ConnectedNotificationListener[0];
+
+	private volatile PingResponseListener[] pingResponseListeners = new PingResponseListener[0];
+
+	private volatile NotificationHandler[] handlers = new NotificationHandler[0];
+
+	private volatile boolean[] parsed = new boolean[256]; // by message ID, true if a listener needs the notification
+
+	synchronized void add(NotificationListener listener) {
+		purge();
+		all = Arrays.copyOf(all, all.length + 1);
+		all[all.length - 1] = listener;
+		rebuild();
+	}
+
+	/**
+	 * Adds a listener which does not prevent garbage collection of the listener.
+	 * 
+	 * @param listener the listener
+	 */
+	void addWeak(NotificationListener listener) {
+		add(new WeakListener(listener));
+	}
+
+	synchronized void remove(NotificationListener listener) {
+		for (int i = 0; i < all.length; i++) {
+			if (all[i].equals(listener) || target(all[i]) == listener) {
+				NotificationListener[] tmp = new NotificationListener[all.length - 1];
+				System.arraycopy(all, 0, tmp, 0, i);
+				System.arraycopy(all, i + 1, tmp, i, all.length - i - 1);
+				all = tmp;
+				rebuild();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes wrappers of weakly registered listeners which are garbage collected.
+	 */
+	synchronized void purge() {
+		NotificationListener[] reachable = Arrays.stream(all).filter(listener -> target(listener) != null).toArray(NotificationListener[]::new);
+		if (reachable.length != all.length) {
+			all = reachable;
+			rebuild();
+		}
+	}
+
+	/**
+	 * Removes all listeners and handlers.
+	 */
+	synchronized void clear() {
+		all = new NotificationListener[0];
+		handlers = new NotificationHandler[0];
+		rebuild();
+	}
+
+	synchronized void addHandler(NotificationHandler handler) {
+		NotificationHandler[] tmp = Arrays.copyOf(handlers, handlers.length + 1);
+		tmp[tmp.length - 1] = handler;
+		handlers = tmp;
+	}
+
+	synchronized void removeHandler(NotificationHandler handler) {
+		handlers = Arrays.stream(handlers).filter(h -> !h.equals(handler)).toArray(NotificationHandler[]::new);
+	}
+
+	/**
+	 * Returns all listeners in order of registration.
+	 *
+	 * @return all listeners
+	 */
+	synchronized List<NotificationListener> all() {
+		return Collections.unmodifiableList(Arrays.asList(all));
+	}
+
+	/**
+	 * Returns true, if a listener needs notification objects of messages with this ID.
+	 * 
+	 * @param msgId the message ID
+	 * @return true, if the message must be parsed
+	 */
+	boolean needsParse(byte msgId) {
+		return parsed[msgId & 0xFF];
+	}
+
+	/**
+	 * Returns true, if there are handlers, see {@link #fireDecoded(byte[])}.
+	 * 
+	 * @return true, if there are handlers
+	 */
+	boolean hasHandlers() {
+		return handlers.length > 0;
+	}
+
+	/**
+	 * Decodes the message for every handler, without allocating notification objects.
+	 * 
+	 * @param bytes the Anki BLE message
+	 */
+	void fireDecoded(byte[] bytes) {
+		for (NotificationHandler handler : handlers) {
+			NotificationParser.decode(bytes, 0, handler);
+		}
+	}
+
+	void firePositionUpdate(PositionUpdate positionUpdate) {
+		for (PositionUpdateListener listener : positionUpdateListeners) {
+			listener.onPositionUpdate(positionUpdate);
+		}
+	}
+
+	void fireTransitionUpdate(TransitionUpdate transitionUpdate) {
+		for (TransitionUpdateListener listener : transitionUpdateListeners) {
+			listener.onTransitionUpdate(transitionUpdate);
+		}
+	}
+
+	void fireChargerInfoNotification(ChargerInfoNotification chargerInfoNotification) {
+		for (ChargerInfoNotificationListener listener : chargerInfoNotificationListeners) {
+			listener.onChargerInfoNotification(chargerInfoNotification);
+		}
+	}
+
+	void fireConnectedNotification(ConnectedNotification connectedNotification) {
+		for (ConnectedNotificationListener listener : connectedNotificationListeners) {
+			listener.onConnectedNotification(connectedNotification);
+		}
+	}
+
+	void firePingResponse(PingResponse pingResponse) {
+		for (PingResponseListener listener : pingResponseListeners) {
+			listener.onPingResponse(pingResponse);
+		}
+	}
+
+	/**
+	 * A listener is put into the array of a notification type, if it, or the listener wrapped by a {@link WeakListener},
+	 * is interested in this type.
+	 */
+	private void rebuild() {
+		positionUpdateListeners = Arrays.stream(all).filter(l -> target(l) instanceof PositionUpdateListener)
+				.map(PositionUpdateListener.class::cast).toArray(PositionUpdateListener[]::new);
+		transitionUpdateListeners = Arrays.stream(all).filter(l -> target(l) instanceof TransitionUpdateListener)
+				.map(TransitionUpdateListener.class::cast).toArray(TransitionUpdateListener[]::new);
+		chargerInfoNotificationListeners = Arrays.stream(all).filter(l -> target(l) instanceof ChargerInfoNotificationListener)
+				.map(ChargerInfoNotificationListener.class::cast).toArray(ChargerInfoNotificationListener[]::new);
+		connectedNotificationListeners = Arrays.stream(all).filter(l -> target(l) instanceof ConnectedNotificationListener)
+				.map(ConnectedNotificationListener.class::cast).toArray(ConnectedNotificationListener[]::new);
+		pingResponseListeners = Arrays.stream(all).filter(l -> target(l) instanceof PingResponseListener)
+				.map(PingResponseListener.class::cast).toArray(PingResponseListener[]::new);
+		rebuildParsed();
+	}
+
+	/**
+	 * A message is parsed if there is a listener of its type. Handlers are left out, they decode without parsing.
+	 */
+	private synchronized void rebuildParsed() {
+		boolean[] table = new boolean[256];
+		for (int i = 0; i < table.length; i++) {
+			Class<? extends Notification> type = NotificationParser.typeOf((byte) i);
+			table[i] = type == PositionUpdate.class && positionUpdateListeners.length > 0
+					|| type == TransitionUpdate.class && transitionUpdateListeners.length > 0
+					|| type == ChargerInfoNotification.class && chargerInfoNotificationListeners.length > 0
+					|| type == PingResponse.class && pingResponseListeners.length > 0;
+		}
+		parsed = table;
+	}
+
+	/**
+	 * Returns the listener itself or the listener wrapped by a {@link WeakListener}, null if already collected.
+	 */
+	private static NotificationListener target(NotificationListener listener) {
+		return listener instanceof WeakListener ? ((WeakListener) listener).target.get() : listener;
+	}
+
+	/**
+	 * Wrapper of a weakly registered listener. Implements every listener type, but is only put into the arrays
+	 * of the types the wrapped listener implements.
+	 */
+	static final class WeakListener implements PositionUpdateListener, TransitionUpdateListener, ChargerInfoNotificationListener,
+			ConnectedNotificationListener, PingResponseListener {
+
+		final WeakReference<NotificationListener> target;
+
+		WeakListener(NotificationListener listener) {
+			this.target = new WeakReference<>(listener);
+		}
+
+		@Override
+		public void onPositionUpdate(PositionUpdate positionUpdate) {
+			NotificationListener listener = target.get();
+			if (listener != null) {
+				((PositionUpdateListener) listener).onPositionUpdate(positionUpdate);
+			}
+		}
+
+		@Override
+		public void onTransitionUpdate(TransitionUpdate transitionUpdate) {
+			NotificationListener listener = target.get();
+			if (listener != null) {
+				((TransitionUpdateListener) listener).onTransitionUpdate(transitionUpdate);
+			}
+		}
+
+		@Override
+		public void onChargerInfoNotification(ChargerInfoNotification chargerInfoNotification) {
+			NotificationListener listener = target.get();
+			if (listener != null) {
+				((ChargerInfoNotificationListener) listener).onChargerInfoNotification(chargerInfoNotification);
+			}
+		}
+
+		@Override
+		public void onConnectedNotification(ConnectedNotification connectedNotification) {
+			NotificationListener listener = target.get();
+			if (listener != null) {
+				((ConnectedNotificationListener) listener).onConnectedNotification(connectedNotification);
+			}
+		}
+
+		@Override
+		public void onPingResponse(PingResponse pingResponse) {
+			NotificationListener listener = target.get();
+			if (listener != null) {
+				((PingResponseListener) listener).onPingResponse(pingResponse);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+package de.pdbm.janki.core;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.pdbm.janki.core.notifications.Notification;
+
+/**
+ * Publisher of notifications of one type, honoring the demand of every subscriber.
+ * <p>
+ *
+ * Every subscriber has its own bounded buffer, so a slow subscriber neither delays other subscribers nor
+ * the dispatch of notifications to listeners, unless {@link OverflowPolicy#BLOCK} is chosen. Items are delivered
+ * on a shared executor, one task at a time per subscriber, so {@code onNext} calls of a subscriber never overlap.
+ *
+ * @author bernd
+ *
+ * @param <T> type of notification
+ */
+final class NotificationPublisher<T extends Notification> implements Flow.Publisher<T> {
+
+	private static Executor executor; // created lazily, guarded by class
+
+	private final int bufferSize;
+	private final OverflowPolicy overflowPolicy;
+	private final LongAdder dropped;
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a publisher.
+	 *
+	 * @param bufferSize number of items buffered per subscriber
+	 * @param overflowPolicy what to do if the buffer of a subscriber is full
+	 * @param dropped counter of dropped items, may be shared between publishers
+	 */
+	NotificationPublisher(int bufferSize, OverflowPolicy overflowPolicy, LongAdder dropped) {
+		this.bufferSize = Math.max(1, bufferSize);
+		this.overflowPolicy = overflowPolicy;
+		this.dropped = dropped;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		Subscription subscription = new Subscription(subscriber);
+		if (!closed) {
+			subscriptions.add(subscription);
+		}
+		subscription.start(closed);
+	}
+
+	/**
+	 * Returns true, if there is at least one subscriber.
+	 *
+	 * @return true, if subscribed
+	 */
+	boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * Offers the item to all subscribers. Called by the dispatching thread.
+	 *
+	 * @param item the notification
+	 */
+	void submit(T item) {
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(item);
+		}
+	}
+
+	/**
+	 * Completes all subscribers after their buffered items are delivered. Later subscribers are completed immediately.
+	 */
+	void close() {
+		closed = true;
+		for (Subscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	private static synchronized Executor executor() {
+		if (executor == null) {
+			executor = Threads.isVirtual() ? Executors.newThreadPerTaskExecutor(Threads.factory("janki-publisher", true))
+					: Executors.newCachedThreadPool(Threads.factory("janki-publisher", false));
+		}
+		return executor;
+	}
+
+	/**
+	 * Subscription with bounded buffer. The work-in-progress counter serializes signals to the subscriber.
+	 */
+	private final class Subscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super T> subscriber;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notFull = lock.newCondition();
+		private final ArrayDeque<T> buffer = new ArrayDeque<>(); // guarded by lock
+		private long demand; // guarded by lock
+		private boolean done; // guarded by lock, complete after buffered items
+		private Throwable error; // guarded by lock, signaled before buffered items
+
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+
+		private Subscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/*
+		 * onSubscribe is the first signal, it runs while wip is held, so no onNext overtakes it.
+		 */
+		private void start(boolean complete) {
+			wip.set(1);
+			if (complete) {
+				complete();
+			}
+			executor().execute(() -> {
+				try {
+					subscriber.onSubscribe(this);
+				} catch (Throwable e) {
+					e.printStackTrace();
+					cancel();
+				}
+				drain(1);
+			});
+		}
+
+		private void offer(T item) {
+			lock.lock();
+			try {
+				if (cancelled || done) {
+					return;
+				}
+				if (buffer.size() >= bufferSize) {
+					switch (overflowPolicy) {
+					case DROP_NEWEST:
+						dropped.increment();
+						return;
+					case DROP_OLDEST:
+						buffer.pollFirst();
+						dropped.increment();
+						break;
+					case BLOCK:
+						while (buffer.size() >= bufferSize && !cancelled) {
+							notFull.await();
+						}
+						if (cancelled) {
+							return;
+						}
+						break;
+					}
+				}
+				buffer.addLast(item);
+			} catch (InterruptedException e) {
+				dropped.increment();
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				lock.unlock();
+			}
+			schedule();
+		}
+
+		private void complete() {
+			lock.lock();
+			try {
+				done = true;
+			} finally {
+				lock.unlock();
+			}
+			schedule();
+		}
+
+		@Override
+		public void request(long n) {
+			lock.lock();
+			try {
+				if (n <= 0) {
+					error = new IllegalArgumentException("non-positive request: " + n); // rule 3.9 of reactive streams
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+			} finally {
+				lock.unlock();
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			lock.lock();
+			try {
+				buffer.clear();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor().execute(() -> drain(1));
+			}
+		}
+
+		private void drain(int missed) {
+			while (true) {
+				while (!cancelled) {
+					T item;
+					Throwable failure;
+					boolean completed = false;
+					lock.lock();
+					try {
+						failure = error;
+						item = failure == null && demand > 0 ? buffer.pollFirst() : null;
+						if (item != null) {
+							demand--;
+							notFull.signal();
+						} else {
+							completed = done && buffer.isEmpty();
+						}
+					} finally {
+						lock.unlock();
+					}
+					if (failure != null) {
+						cancel();
+						subscriber.onError(failure);
+					} else if (item != null) {
+						try {
+							subscriber.onNext(item);
+						} catch (Throwable e) { // rule 2.13 of reactive streams, the subscription is cancelled
+							e.printStackTrace();
+							cancel();
+						}
+					} else {
+						if (completed) {
+							cancel();
+							subscriber.onComplete();
+						}
+						break;
+					}
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package de.pdbm.janki.core;
+
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotification;
+import de.pdbm.janki.core.notifications.ConnectedNotification;
+import de.pdbm.janki.core.notifications.Notification;
+import de.pdbm.janki.core.notifications.NotificationParser;
+import de.pdbm.janki.core.notifications.PingResponse;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.TransitionUpdate;
+
+/**
+ * The publishers of a vehicle or of the fleet, one per notification type.
+ *
+ * @author bernd
+ *
+ */
+final class NotificationPublishers {
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final Map<Class<? extends Notification>, NotificationPublisher<?>> publishers;
+
+	private final NotificationPublisher<?>[] byMessageId = new NotificationPublisher<?>[256];
+
+	NotificationPublishers(Configuration configuration) {
+		int bufferSize = configuration == null ? Flow.defaultBufferSize() : configuration.getPublisherBufferSize();
+		OverflowPolicy overflowPolicy = configuration == null ? OverflowPolicy.DROP_OLDEST : configuration.getPublisherOverflowPolicy();
+		this.publishers = Map.of(
+				PositionUpdate.class, new NotificationPublisher<PositionUpdate>(bufferSize, overflowPolicy, dropped),
+				TransitionUpdate.class, new NotificationPublisher<TransitionUpdate>(bufferSize, overflowPolicy, dropped),
+				ChargerInfoNotification.class, new NotificationPublisher<ChargerInfoNotification>(bufferSize, overflowPolicy, dropped),
+				ConnectedNotification.class, new NotificationPublisher<ConnectedNotification>(bufferSize, overflowPolicy, dropped),
+				PingResponse.class, new NotificationPublisher<PingResponse>(bufferSize, overflowPolicy, dropped));
+		for (int i = 0; i < byMessageId.length; i++) {
+			byMessageId[i] = publishers.get(NotificationParser.typeOf((byte) i));
+		}
+	}
+
+	/**
+	 * Returns the publisher of the given notification type.
+	 *
+	 * @param type the notification type
+	 * @return the publisher
+	 * @throws IllegalArgumentException if notifications of this type are not published
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends Notification> Flow.Publisher<T> get(Class<T> type) {
+		NotificationPublisher<?> publisher = publishers.get(type);
+		if (publisher == null) {
+			throw new IllegalArgumentException("no publisher for " + type.getName());
+		}
+		return (Flow.Publisher<T>) publisher;
+	}
+
+	/**
+	 * Returns true, if the publisher of messages with this ID has subscribers.
+	 *
+	 * @param msgId the message ID
+	 * @return true, if observed
+	 */
+	boolean observes(byte msgId) {
+		NotificationPublisher<?> publisher = byMessageId[msgId & 0xFF];
+		return publisher != null && publisher.hasSubscribers();
+	}
+
+	/**
+	 * Offers the notification to the subscribers of its type.
+	 *
+	 * @param notification the notification
+	 */
+	@SuppressWarnings("unchecked")
+	void publish(Notification notification) {
+		NotificationPublisher<Notification> publisher = (NotificationPublisher<Notification>) publishers.get(notification.getClass());
+		if (publisher != null && publisher.hasSubscribers()) {
+			publisher.submit(notification);
+		}
+	}
+
+	/**
+	 * Completes all subscribers.
+	 */
+	void close() {
+		publishers.values().forEach(NotificationPublisher::close);
+	}
+
+	/**
+	 * Returns the number of notifications dropped because the buffer of a subscriber was full.
+	 *
+	 * @return number of dropped notifications
+	 */
+	long getDropped() {
+		return dropped.sum();
+	}
+
+}
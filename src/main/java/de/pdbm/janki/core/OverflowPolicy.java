@@ -0,0 +1,26 @@
+package de.pdbm.janki.core;
+
+/**
+ * What to do if a bounded buffer of notifications is full.
+ * 
+ * @author bernd
+ *
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Drop the oldest buffered notification to make room for the new one.
+	 */
+	DROP_OLDEST, 
+	
+	/**
+	 * Drop the new notification.
+	 */
+	DROP_NEWEST, 
+	
+	/**
+	 * Block the producer until there is room in the buffer.
+	 */
+	BLOCK;
+
+}
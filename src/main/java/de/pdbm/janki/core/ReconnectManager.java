@@ -0,0 +1,174 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import de.pdbm.janki.core.notifications.Message;
+
+/**
+ * Reconnects vehicles which lost their connection, see {@link Configuration#setReconnect(boolean)}.
+ * <p>
+ *
+ * A lost connection is reported by the connected notification of the vehicle and the first attempt starts immediately.
+ * Failed attempts are retried with exponential backoff and equal jitter, i.e. between half and the full backoff,
+ * so vehicles lost at the same time do not retry in lockstep. Attempts run on a pool of
+ * {@link Configuration#getMaxConcurrentReconnects()} threads, which bounds simultaneous connection attempts.
+ * <p>
+ *
+ * After the link is reconnected SDK mode is set again and the last commanded speed and lane are restored.
+ * The time from losing the connection to the restored state is reported per vehicle, see
+ * {@link JAnki#onVehicleRecovered(BiConsumer)} and {@link VehicleMetricsMBean}.
+ * Vehicles disconnected by {@link Vehicle#disconnect()} are not reconnected.
+ *
+ * @author bernd
+ *
+ */
+final class ReconnectManager {
+
+	private static final long RESTORE_TIMEOUT_MILLIS = 5000;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	private final long initialBackoff; // nanos
+
+	private final long maxBackoff; // nanos
+
+	private final BiConsumer<Vehicle, Duration> onRecovered;
+
+	private final Map<Vehicle, Recovery> recoveries = new ConcurrentHashMap<>();
+
+	ReconnectManager(Configuration configuration, BiConsumer<Vehicle, Duration> onRecovered) {
+		this.initialBackoff = configuration.getReconnectInitialBackoff().toNanos();
+		this.maxBackoff = configuration.getReconnectMaxBackoff().toNanos();
+		this.onRecovered = onRecovered;
+		this.executor = new ScheduledThreadPoolExecutor(configuration.getMaxConcurrentReconnects(),
+				Threads.factory("janki-reconnect", configuration.isVirtualThreads()));
+		this.executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Starts recovery of the vehicle, if not already recovering.
+	 *
+	 * @param vehicle the vehicle which lost its connection
+	 */
+	void onDisconnected(Vehicle vehicle) {
+		if (vehicle.isDetached() || executor.isShutdown()) {
+			return;
+		}
+		Recovery recovery = new Recovery(vehicle);
+		if (recoveries.putIfAbsent(vehicle, recovery) == null) {
+			Logger.log(LogType.CONNECTED_NOTIFICATION, "{} lost connection, reconnecting", vehicle.toShortString());
+			executor.execute(() -> attempt(recovery));
+		}
+	}
+
+	/**
+	 * Returns true, if the vehicle is being reconnected.
+	 *
+	 * @param vehicle the vehicle
+	 * @return true, if recovering
+	 */
+	boolean isRecovering(Vehicle vehicle) {
+		return recoveries.containsKey(vehicle);
+	}
+
+	/**
+	 * Stops all recoveries, running attempts are interrupted.
+	 */
+	void stop() {
+		executor.shutdownNow();
+		recoveries.clear();
+	}
+
+	private void attempt(Recovery recovery) {
+		Vehicle vehicle = recovery.vehicle;
+		if (vehicle.disconnectRequested || !Vehicle.registry.find(vehicle.getMac()).isPresent()) {
+			recoveries.remove(vehicle, recovery);
+			return;
+		}
+		recovery.attempts++;
+		vehicle.metrics.reconnectAttempts.increment();
+		boolean recovered;
+		vehicle.connecting(true);
+		try {
+			recovered = vehicle.link.reconnect() && restore(vehicle);
+		} catch (Exception e) {
+			Logger.log(LogType.CONNECTED_NOTIFICATION, "reconnect of {} failed: {}", vehicle.toShortString(), e);
+			recovered = false;
+		} finally {
+			vehicle.connecting(false);
+		}
+		if (recovered) {
+			vehicle.initialized();
+			recoveries.remove(vehicle, recovery);
+			Duration timeToRecover = Duration.ofNanos(System.nanoTime() - recovery.start);
+			vehicle.metrics.recoveryTime.record(timeToRecover.toNanos());
+			Logger.log(LogType.CONNECTED_NOTIFICATION, "{} recovered after {}", vehicle.toShortString(), timeToRecover);
+			try {
+				onRecovered.accept(vehicle, timeToRecover);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else if (!executor.isShutdown()) {
+			executor.schedule(() -> attempt(recovery), backoff(recovery.attempts), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Sets SDK mode and restores last commanded speed and lane.
+	 *
+	 * @return true, if all messages were written in time
+	 */
+	private static boolean restore(Vehicle vehicle) throws InterruptedException {
+		CommandQueue queue = vehicle.getCommandQueue();
+		CompletableFuture<Void> restored = queue.submit(CommandQueue.Kind.OTHER, Message.getSdkMode());
+		if (!Float.isNaN(vehicle.getLaneOffset())) {
+			restored = CompletableFuture.allOf(restored, vehicle.changeLane(vehicle.getLaneOffset()));
+		}
+		if (vehicle.getSpeed() != 0) {
+			restored = CompletableFuture.allOf(restored, vehicle.setSpeed(vehicle.getSpeed()));
+		}
+		try {
+			restored.get(RESTORE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				throw (InterruptedException) e;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the delay before the next attempt: exponential backoff with equal jitter.
+	 *
+	 * @param attempts number of failed attempts so far, at least 1
+	 * @return delay in nanoseconds
+	 */
+	long backoff(int attempts) {
+		long backoff = initialBackoff << Math.min(attempts - 1, 30);
+		if (backoff <= 0 || backoff > maxBackoff) {
+			backoff = maxBackoff;
+		}
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+
+	private static final class Recovery {
+
+		private final Vehicle vehicle;
+		private final long start = System.nanoTime(); // connection lost
+		private int attempts; // attempt thread only
+
+		private Recovery(Vehicle vehicle) {
+			this.vehicle = vehicle;
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package de.pdbm.janki.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import de.pdbm.janki.core.Vehicle.Model;
+import de.pdbm.janki.core.journal.JournalRecord;
+import de.pdbm.janki.core.journal.JournalReader;
+
+/**
+ * Replays recorded value notifications through {@link de.pdbm.janki.core.notifications.NotificationParser}
+ * and the normal listener dispatch of {@link Vehicle}.
+ * <p>
+ *
+ * Notifications are dispatched to the vehicle with the recorded MAC address. If no such vehicle is known, a detached
+ * vehicle is created and registered, so it is returned by {@link Vehicle#getVehicles()} and {@link Vehicle#find(long)}
+ * like a real one, until {@link #run()} ends. Replay runs in the calling thread, at original timing, N times faster or
+ * as fast as possible. The timing starts over at the first record of every recorded run, see {@link JournalRecord#getRun()}:
+ *
+ * <pre>
+ * Vehicle.find(mac).get().addNotificationListener(...);
+ * Replay.Result result = new Replay(new JournalReader(directory)).setSpeed(Replay.MAX_SPEED).run();
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public class Replay {
+
+	/**
+	 * Speed factor to replay as fast as possible, without waiting between notifications.
+	 */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+	private final Iterable<JournalRecord> records;
+
+	private final Map<Long, Model> models = new HashMap<>();
+
+	private final Set<Vehicle> created = new HashSet<>(); // detached vehicles registered by this replay
+
+	private double speed = 1.0;
+
+	/**
+	 * Creates a replay of the given records, e.g. a {@link JournalReader}.
+	 *
+	 * @param records the records in order of recording
+	 */
+	public Replay(Iterable<JournalRecord> records) {
+		this.records = records;
+	}
+
+	/**
+	 * Sets the speed factor. 1 is original timing, 10 is ten times faster, {@link #MAX_SPEED} as fast as possible.
+	 *
+	 * @param speed the speed factor, must be positive
+	 * @return this replay
+	 */
+	public Replay setSpeed(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("speed must be positive");
+		}
+		this.speed = speed;
+		return this;
+	}
+
+	/**
+	 * Sets the model of a detached vehicle created by this replay.
+	 *
+	 * @param mac the MAC address as 48 bit value
+	 * @param model the model
+	 * @return this replay
+	 */
+	public Replay setModel(long mac, Model model) {
+		models.put(mac, model);
+		return this;
+	}
+
+	/**
+	 * Returns the vehicle notifications with this MAC address are dispatched to. Creates and registers a detached vehicle if necessary,
+	 * which is evicted when {@link #run()} ends.
+	 * <p>
+	 * Use it to add listeners before {@link #run()}.
+	 *
+	 * @param mac the MAC address as 48 bit value
+	 * @return the vehicle
+	 */
+	public Vehicle vehicle(long mac) {
+		Optional<Vehicle> vehicle = Vehicle.find(mac);
+		if (vehicle.isPresent()) {
+			return vehicle.get();
+		}
+		Vehicle detached = new Vehicle(mac, Optional.ofNullable(models.get(mac)), null);
+		if (Vehicle.registry.add(detached)) {
+			created.add(detached);
+			return detached;
+		}
+		return Vehicle.find(mac).get();
+	}
+
+	/**
+	 * Replays all records in the calling thread. Evicts the vehicles created by this replay afterwards.
+	 *
+	 * @return statistics of this replay
+	 * @throws InterruptedException if interrupted while waiting for the next notification
+	 */
+	public Result run() throws InterruptedException {
+		Map<Long, Vehicle> vehicles = new HashMap<>();
+		long count = 0;
+		long run = 0;
+		long firstTimestamp = 0; // of the current run
+		long start = System.nanoTime();
+		long runStart = start; // nano time the current run started replaying
+		try {
+			for (JournalRecord record : records) {
+				if (count == 0 || record.getRun() != run) { // timestamps of different runs are not comparable
+					run = record.getRun();
+					firstTimestamp = record.getTimestamp();
+					runStart = System.nanoTime();
+				} else if (speed != MAX_SPEED) {
+					long due = runStart + (long) ((record.getTimestamp() - firstTimestamp) / speed);
+					for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+						LockSupport.parkNanos(wait);
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+					}
+				}
+				vehicles.computeIfAbsent(record.getMac(), this::vehicle).dispatchValueNotification(record.getBytes());
+				count++;
+			}
+		} finally {
+			created.forEach(JAnki::evict);
+			created.clear();
+		}
+		return new Result(count, System.nanoTime() - start);
+	}
+
+	/**
+	 * Statistics of a replay.
+	 */
+	public static final class Result {
+
+		private final long notifications;
+		private final long elapsedNanos;
+
+		private Result(long notifications, long elapsedNanos) {
+			this.notifications = notifications;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public long getNotifications() {
+			return notifications;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * Returns the number of notifications dispatched per second.
+		 *
+		 * @return notifications per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0 : notifications * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "Replay.Result [notifications=" + notifications + ", elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+					+ " ms, throughput=" + Math.round(getThroughput()) + "/s]";
+		}
+	}
+
+}
@@ -11,36 +11,47 @@ public enum RoadPiece {
 
 	START(33), FINISH(34), STRAIGHT(36, 39, 40, 48, 51), CORNER(17, 18, 20, 23, 24, 27), INTERSECTION(10);
 	
-	@SuppressWarnings("unused")
 	private int[] ids;
 
+	private static final RoadPiece[] BY_ID = new RoadPiece[256]; // lookup table, index is road piece ID
+
+	static {
+		for (RoadPiece roadPiece : values()) {
+			for (int id : roadPiece.ids) {
+				BY_ID[id] = roadPiece;
+			}
+		}
+	}
+
 	private RoadPiece(int... ids) {
 		this.ids = ids;
 	}
 	
 	public static RoadPiece valueOf(int id) {
-		switch (id) {
-		case 33:
-			return START;
-		case 34:
-			return FINISH;
-		case 36:
-		case 39:
-		case 40:
-		case 48:
-		case 51:
-			return STRAIGHT;
-		case 17:
-		case 18:
-		case 20:
-		case 23:
-		case 24:
-		case 27:
-			return CORNER;
-		case 10:
-			return INTERSECTION;
+		RoadPiece roadPiece = forId(id);
+		if (roadPiece == null) {
+			throw new IllegalArgumentException("unknown road piece id");
 		}
-		throw new IllegalArgumentException("unknown road piece id");
+		return roadPiece;
+	}
+
+	/**
+	 * Returns the first Anki road piece ID of this road piece, e.g. for simulation.
+	 * 
+	 * @return the Anki road piece ID
+	 */
+	public int getId() {
+		return ids[0];
+	}
+
+	/**
+	 * Returns the road piece for an Anki road piece ID without throwing an exception.
+	 * 
+	 * @param id the Anki road piece ID
+	 * @return the road piece or null, if ID is unknown
+	 */
+	public static RoadPiece forId(int id) {
+		return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
 	}
 	
 }
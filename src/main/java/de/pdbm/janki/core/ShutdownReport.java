@@ -0,0 +1,81 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Result of {@link JAnki#shutdown(Duration)}: which vehicles were stopped and disconnected in time and which failed.
+ *
+ * @author bernd
+ *
+ */
+public final class ShutdownReport {
+
+	private final List<Vehicle> vehicles;
+
+	private final Map<Vehicle, Throwable> failures;
+
+	private final Duration elapsed;
+
+	ShutdownReport(List<Vehicle> vehicles, Map<Vehicle, Throwable> failures, Duration elapsed) {
+		this.vehicles = Collections.unmodifiableList(vehicles);
+		this.failures = Collections.unmodifiableMap(failures);
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Returns all vehicles shut down.
+	 *
+	 * @return the vehicles
+	 */
+	public List<Vehicle> getVehicles() {
+		return vehicles;
+	}
+
+	/**
+	 * Returns the vehicles stopped and disconnected before the deadline.
+	 *
+	 * @return the disconnected vehicles
+	 */
+	public List<Vehicle> getDisconnected() {
+		return vehicles.stream().filter(vehicle -> !failures.containsKey(vehicle)).collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the vehicles which failed to stop or disconnect, with the first failure.
+	 * A vehicle not done before the deadline fails with a {@link java.util.concurrent.TimeoutException}.
+	 *
+	 * @return the failed vehicles
+	 */
+	public Map<Vehicle, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns true, if all vehicles are disconnected.
+	 *
+	 * @return true, if no vehicle failed
+	 */
+	public boolean isComplete() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * Returns the time the shutdown took.
+	 *
+	 * @return the elapsed time
+	 */
+	public Duration getElapsed() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "ShutdownReport(" + (vehicles.size() - failures.size()) + "/" + vehicles.size() + " disconnected in " + elapsed.toMillis() + " ms"
+				+ failures.entrySet().stream().map(e -> ", " + e.getKey().toShortString() + " failed: " + e.getValue()).collect(Collectors.joining()) + ")";
+	}
+
+}
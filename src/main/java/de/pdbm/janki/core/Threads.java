@@ -0,0 +1,49 @@
+package de.pdbm.janki.core;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for blocking work of the JAnki runtime, platform or virtual, see {@link Configuration#setVirtualThreads(boolean)}.
+ * <p>
+ *
+ * Virtual threads are unmounted while sleeping between retries, waiting for the connection lock or
+ * waiting for a command, so a fleet does not need a platform thread per blocking call. Note that native
+ * TinyB calls pin the carrier thread, which is acceptable because connection attempts are serialized anyway.
+ *
+ * @author bernd
+ *
+ */
+final class Threads {
+
+	private Threads() {
+	}
+
+	/**
+	 * Returns true, if JAnki is started with virtual threads.
+	 *
+	 * @return true, if virtual threads are configured
+	 */
+	static boolean isVirtual() {
+		Configuration configuration = JAnki.configuration();
+		return configuration != null && configuration.isVirtualThreads();
+	}
+
+	/**
+	 * Returns a factory of daemon threads with the given name.
+	 *
+	 * @param name the thread name
+	 * @param virtual true for virtual threads, false for platform threads
+	 * @return the thread factory
+	 */
+	static ThreadFactory factory(String name, boolean virtual) {
+		if (virtual) {
+			return Thread.ofVirtual().name(name).factory();
+		}
+		return runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
@@ -0,0 +1,86 @@
+package de.pdbm.janki.core;
+
+import java.util.function.Consumer;
+
+import tinyb.BluetoothDevice;
+import tinyb.BluetoothGattCharacteristic;
+
+/**
+ * Link to a vehicle by TinyB. Characteristics are set by {@link AnkiBle#initializeDevice(Vehicle)}.
+ *
+ * @author bernd
+ *
+ */
+class TinyBLink implements Link {
+
+	final BluetoothDevice bluetoothDevice; // device representing the vehicle
+
+	volatile BluetoothGattCharacteristic readCharacteristic;
+
+	volatile BluetoothGattCharacteristic writeCharacteristic; // read by command queue writer
+
+	volatile Consumer<byte[]> valueNotifications; // set with read characteristic, enabled again on reconnect
+
+	TinyBLink(BluetoothDevice bluetoothDevice) {
+		this.bluetoothDevice = bluetoothDevice;
+	}
+
+	@Override
+	public boolean write(byte[] message) {
+		BluetoothGattCharacteristic characteristic = writeCharacteristic;
+		if (characteristic == null || !bluetoothDevice.getConnected()) {
+			throw new IllegalStateException(bluetoothDevice.getAddress() + " not connected");
+		}
+		return characteristic.writeValue(message);
+	}
+
+	@Override
+	public boolean isConnected() {
+		return bluetoothDevice.getConnected();
+	}
+
+	@Override
+	public boolean isReady() {
+		return writeCharacteristic != null && readCharacteristic != null;
+	}
+
+	@Override
+	public void disconnect() {
+		bluetoothDevice.disableConnectedNotifications();
+		bluetoothDevice.disconnect();
+	}
+
+	@Override
+	public boolean reconnect() {
+		return AnkiBle.reconnect(this);
+	}
+
+	@Override
+	public void release() {
+		valueNotifications = null;
+		BluetoothGattCharacteristic read = readCharacteristic;
+		readCharacteristic = null;
+		BluetoothGattCharacteristic write = writeCharacteristic;
+		writeCharacteristic = null;
+		try {
+			bluetoothDevice.disableConnectedNotifications();
+			if (read != null) {
+				read.disableValueNotifications();
+				read.close();
+			}
+			if (write != null) {
+				write.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			bluetoothDevice.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "read " + (readCharacteristic == null ? "-" : "\u2718") + ", write " + (writeCharacteristic == null ? "-" : "\u2718");
+	}
+
+}
@@ -0,0 +1,21 @@
+package de.pdbm.janki.core;
+
+/**
+ * Bluetooth LE transport by TinyB, see {@link AnkiBle}.
+ *
+ * @author bernd
+ *
+ */
+class TinyBTransport implements Transport {
+
+	@Override
+	public void start(Configuration configuration, TransportContext context) {
+		AnkiBle.init(configuration);
+	}
+
+	@Override
+	public void stop() {
+		AnkiBle.shutdown();
+	}
+
+}
@@ -0,0 +1,30 @@
+package de.pdbm.janki.core;
+
+/**
+ * Transport connecting JAnki to vehicles, e.g. Bluetooth LE by TinyB, which is the default, or a simulation.
+ * <p>
+ *
+ * A transport discovers vehicles in background, attaches them by
+ * {@link TransportContext#attach(long, java.util.Optional, Link)} and reports them by
+ * {@link TransportContext#ready(Vehicle)} as soon as they can be used.
+ * Use {@link Configuration#setTransport(Transport)} to choose the transport.
+ *
+ * @author bernd
+ *
+ */
+public interface Transport {
+
+	/**
+	 * Starts discovery of vehicles in background. Returns immediately.
+	 *
+	 * @param configuration the configuration JAnki is started with
+	 * @param context the context to report vehicles and notifications to
+	 */
+	void start(Configuration configuration, TransportContext context);
+
+	/**
+	 * Stops discovery of vehicles. Vehicles are disconnected by JAnki.
+	 */
+	void stop();
+
+}
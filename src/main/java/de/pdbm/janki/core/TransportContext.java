@@ -0,0 +1,64 @@
+package de.pdbm.janki.core;
+
+import java.util.Optional;
+
+import de.pdbm.janki.core.Vehicle.Model;
+
+/**
+ * Callbacks of a {@link Transport} into JAnki.
+ * <p>
+ *
+ * Methods delivering notifications must be called by one thread per vehicle at a time, like TinyB does.
+ *
+ * @author bernd
+ *
+ */
+public final class TransportContext {
+
+	TransportContext() {
+	}
+
+	/**
+	 * Creates and registers the vehicle for a newly discovered device.
+	 *
+	 * @param mac the MAC address as 48 bit value, see {@link MacAddress}
+	 * @param model the model, if known
+	 * @param link the link to the device
+	 * @return the registered vehicle, an already registered vehicle with this MAC address has precedence
+	 */
+	public Vehicle attach(long mac, Optional<Model> model, Link link) {
+		Vehicle vehicle = new Vehicle(mac, model, link);
+		return Vehicle.registry.add(vehicle) ? vehicle : Vehicle.find(mac).get();
+	}
+
+	/**
+	 * Reports a vehicle which is connected and can be used.
+	 *
+	 * @param vehicle the ready vehicle
+	 */
+	public void ready(Vehicle vehicle) {
+		JAnki.vehicleReady(vehicle);
+	}
+
+	/**
+	 * Delivers a value notification, i.e. an Anki message received from the vehicle.
+	 * The bytes are copied, so a transport may reuse its buffer.
+	 *
+	 * @param vehicle the vehicle
+	 * @param bytes the Anki message
+	 */
+	public void valueNotification(Vehicle vehicle, byte[] bytes) {
+		vehicle.onValueNotification(bytes.clone());
+	}
+
+	/**
+	 * Delivers a change of the connection state.
+	 *
+	 * @param vehicle the vehicle
+	 * @param connected true, if connected
+	 */
+	public void connectedNotification(Vehicle vehicle, boolean connected) {
+		vehicle.onConnectedNotification(connected);
+	}
+
+}
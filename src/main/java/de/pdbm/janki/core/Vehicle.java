@@ -1,43 +1,37 @@
 package de.pdbm.janki.core;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import de.pdbm.janki.core.journal.Journal;
 import de.pdbm.janki.core.notifications.ChargerInfoNotification;
 import de.pdbm.janki.core.notifications.ChargerInfoNotificationListener;
 import de.pdbm.janki.core.notifications.ConnectedNotification;
 import de.pdbm.janki.core.notifications.ConnectedNotificationListener;
 import de.pdbm.janki.core.notifications.DefaultNotification;
-import de.pdbm.janki.core.notifications.ManufacturerData;
 import de.pdbm.janki.core.notifications.Message;
 import de.pdbm.janki.core.notifications.Notification;
+import de.pdbm.janki.core.notifications.NotificationHandler;
 import de.pdbm.janki.core.notifications.NotificationListener;
 import de.pdbm.janki.core.notifications.NotificationParser;
+import de.pdbm.janki.core.notifications.PingResponse;
+import de.pdbm.janki.core.notifications.PingResponseListener;
 import de.pdbm.janki.core.notifications.PositionUpdate;
-import de.pdbm.janki.core.notifications.PositionUpdateListener;
 import de.pdbm.janki.core.notifications.TransitionUpdate;
-import de.pdbm.janki.core.notifications.TransitionUpdateListener;
-import tinyb.BluetoothDevice;
-import tinyb.BluetoothGattCharacteristic;
-import tinyb.BluetoothGattService;
-import tinyb.BluetoothManager;
 
 /**
  * Class Vehicle represent a Anki Overdrive vehicle.
@@ -47,45 +41,86 @@ import tinyb.BluetoothManager;
  */
 public class Vehicle {
 
-	private static final Map<Vehicle, Long> vehicles = new ConcurrentHashMap<>();
+	static final VehicleRegistry registry = new VehicleRegistry();
 
-	private BluetoothDevice bluetoothDevice; // device representing this vehicle
+	final Link link; // connection to the transport, null if detached
 
-	private BluetoothGattCharacteristic readCharacteristic;
+	private final String macAddress;
 
-	private BluetoothGattCharacteristic writeCharacteristic;
+	private final long mac; // 48 bit representation of MAC address
 
-	private Collection<NotificationListener> listeners;
+	volatile long lastSeen; // System.nanoTime() of last discovery
 
-	private int speed;
+	private final NotificationListeners listeners = new NotificationListeners();
 
-	private boolean connected;
+	final VehicleMetrics metrics = new VehicleMetrics(this);
 
-	private boolean onCharger;
+	private final AtomicLong pingSent = new AtomicLong(); // System.nanoTime() of outstanding ping, 0 if none
 
-	private Optional<Model> model;
+	private final CommandQueue commandQueue;
 
-	static {
-		AnkiBle.init();
-	}
+	private final NotificationDispatcher.Buffer notificationBuffer; // null for synchronous dispatch
+
+	private volatile int speed; // last commanded speed, restored after reconnect
+
+	private volatile float laneOffset = Float.NaN; // last commanded lane offset, NaN if lane never changed
+
+	private volatile int writeWeight = 1;
+
+	private final AtomicReference<Status> status; // lifecycle, replaced atomically as a whole
+
+	private final List<VehicleStateListener> stateListeners = new CopyOnWriteArrayList<>();
+
+	private final Queue<StateWaiter> stateWaiters = new ConcurrentLinkedQueue<>();
+
+	volatile boolean disconnectRequested; // disconnected on purpose, not reconnected
+
+	final NotificationPublishers publishers;
 
-	private Vehicle(BluetoothDevice bluetoothDevice) {
-		this.listeners = new ConcurrentLinkedDeque<>();
-		this.bluetoothDevice = bluetoothDevice;
+	private Optional<Model> model;
+
+	/**
+	 * Creates a vehicle. Vehicles are created by {@link TransportContext#attach(long, Optional, Link)} or by {@link Replay}.
+	 * <p>
+	 * A detached vehicle, i.e. without link, is connected and ready to start from the listener's point of view, commands fail.
+	 * 
+	 * @param mac the MAC address as 48 bit value
+	 * @param model the model, if known
+	 * @param link the link to the transport, null for a detached vehicle
+	 */
+	Vehicle(long mac, Optional<Model> model, Link link) {
+		this.link = link;
+		this.macAddress = MacAddress.toString(mac);
+		this.mac = mac;
 		this.addNotificationListener(new DefaultConnectedNotificationListener());
 		this.addNotificationListener(new DefaultChargerInfoNotificationListener());
-		model = ManufacturerData.modelFor(bluetoothDevice);
+		this.addNotificationListener(new DefaultPingResponseListener());
+		this.model = model;
+		Configuration configuration = JAnki.configuration();
+		this.commandQueue = new CommandQueue(this::write, CommandQueue.executor(configuration != null && configuration.isVirtualThreads()),
+				new WriteBudget());
+		if (link != null && configuration != null && configuration.isAsynchronousDispatch()) {
+			this.notificationBuffer = NotificationDispatcher.bufferFor(mac, configuration, this::dispatchValueNotification);
+		} else {
+			this.notificationBuffer = null;
+		}
+		this.status = new AtomicReference<>(link == null ? Status.DETACHED : Status.DISCOVERED);
+		this.publishers = new NotificationPublishers(configuration);
 	}
 
 	/**
 	 * Returns a list of all known vehicles.
 	 * 
-	 * Eventually not all vehicles are connected to the BLE device.
+	 * Eventually not all vehicles are connected to the BLE device. Vehicles are only known
+	 * after JAnki is started with {@link JAnki#start(Configuration)}.
+	 * 
+	 * <p>
+	 * The returned list is an immutable snapshot, it does not change if vehicles are discovered later.
 	 * 
 	 * @return list of known vehicles
 	 */
 	public static List<Vehicle> getVehicles() {
-		return new ArrayList<>(vehicles.keySet());
+		return registry.snapshot();
 	}
 
 	/**
@@ -93,38 +128,130 @@ public class Vehicle {
 	 * 
 	 * @param mac vehicle's MAC address
 	 * @return the vehicle
+	 * @throws java.util.NoSuchElementException if no vehicle with this MAC address is known
 	 */
 	public static Vehicle get(String mac) {
-		Set<Vehicle> tmp = vehicles.keySet();
-		Optional<Vehicle> any = tmp.stream().filter(v -> v.getMacAddress().equals(mac)).findAny();
-		return any.get();
+		return find(mac).get();
+	}
+
+	/**
+	 * Returns the vehicle for this MAC address.
+	 * 
+	 * @param mac vehicle's MAC address
+	 * @return the vehicle or empty optional, if not known
+	 */
+	public static Optional<Vehicle> find(String mac) {
+		return registry.find(mac);
+	}
+
+	/**
+	 * Returns the vehicle for this MAC address.
+	 * 
+	 * @param mac vehicle's MAC address as 48 bit value, see {@link MacAddress}
+	 * @return the vehicle or empty optional, if not known
+	 */
+	public static Optional<Vehicle> find(long mac) {
+		return registry.find(mac);
 	}
 
 	/**
 	 * Sets the speed of this vehicle.
+	 * <p>
+	 * The speed message is written asynchronously. A newer speed replaces a not yet written one,
+	 * speed 0 jumps the queue.
 	 * 
 	 * @param speed, usually between 0 and 1000
+	 * @return future completing after the speed message is written
 	 */
-	public void setSpeed(int speed) {
-		if (bluetoothDevice.getConnected()) {
-			writeCharacteristic.writeValue(Message.speedMessage((short) speed));
-			this.speed = speed;
-		} else {
-			System.out.println("not connected");
-		}
+	public CompletableFuture<Void> setSpeed(int speed) {
+		this.speed = speed;
+		return commandQueue.submit(speed == 0 ? CommandQueue.Kind.STOP : CommandQueue.Kind.SPEED, Message.speedMessage((short) speed));
 	}
 	
 	public int getSpeed() {
 		return speed;
 	}
 
-	public void changeLane(float offset) {
-		if (bluetoothDevice.getConnected()) {
-			writeCharacteristic.writeValue(Message.setOffsetFromRoadCenter()); // kalibrieren
-			writeCharacteristic.writeValue(Message.changeLaneMessage((short) 1000, (short) 1000, offset));
-		} else {
-			System.out.println("not connected");
+	/**
+	 * Changes the lane of this vehicle.
+	 * <p>
+	 * The change lane messages are written asynchronously. A newer lane change replaces a not yet written one.
+	 * 
+	 * @param offset the offset from road center
+	 * @return future completing after the change lane messages are written
+	 */
+	public CompletableFuture<Void> changeLane(float offset) {
+		this.laneOffset = offset;
+		return commandQueue.submit(CommandQueue.Kind.CHANGE_LANE, 
+				Message.setOffsetFromRoadCenter(), // kalibrieren
+				Message.changeLaneMessage((short) 1000, (short) 1000, offset));
+	}
+
+	/**
+	 * Returns the offset from road center of the last lane change.
+	 * 
+	 * @return the offset, NaN if the lane was never changed
+	 */
+	public float getLaneOffset() {
+		return laneOffset;
+	}
+
+	/**
+	 * Returns the share of this vehicle in the adapter-wide write budget.
+	 * 
+	 * @return the weight
+	 */
+	public int getWriteWeight() {
+		return writeWeight;
+	}
+
+	/**
+	 * Sets the share of this vehicle in the adapter-wide write budget, see {@link Configuration#setWriteRate(double)}.
+	 * A vehicle with weight 2 gets twice the writes of a vehicle with weight 1, if both have to wait. Default is 1.
+	 * 
+	 * @param writeWeight the weight, at least 1
+	 */
+	public void setWriteWeight(int writeWeight) {
+		if (writeWeight < 1) {
+			throw new IllegalArgumentException("weight must be at least 1: " + writeWeight);
 		}
+		this.writeWeight = writeWeight;
+	}
+
+	/**
+	 * Sends a ping request. The round trip time is recorded when the ping response arrives, see {@link #getRoundTripTime(double)}.
+	 * <p>
+	 * Ping responses carry no sequence number, so only one ping is outstanding. A ping without response
+	 * until the next ping is counted as lost. The round trip time includes the time in the command queue,
+	 * but not the wait for the adapter-wide write budget, which is recorded as throttle time.
+	 * 
+	 * @return future completing after the ping request is written
+	 */
+	public CompletableFuture<Void> ping() {
+		if (pingSent.getAndSet(System.nanoTime()) != 0) {
+			metrics.pingsLost.increment();
+		}
+		metrics.pingsSent.increment();
+		return commandQueue.submit(CommandQueue.Kind.PING, Message.pingMessage());
+	}
+
+	/**
+	 * Returns a percentile of the ping round trip times measured so far.
+	 * 
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the round trip time in nanoseconds, 0 if no ping response arrived yet
+	 */
+	public long getRoundTripTime(double percentile) {
+		return metrics.pingRoundTrip.getPercentile(percentile);
+	}
+
+	/**
+	 * Returns the queue of outgoing messages of this vehicle.
+	 * 
+	 * @return the command queue
+	 */
+	public CommandQueue getCommandQueue() {
+		return commandQueue;
 	}
 
 	/**
@@ -133,12 +260,78 @@ public class Vehicle {
 	 * @return true, if vehicle is connected, otherwise false 
 	 */
 	public boolean isConnected() {
-		return connected;
+		return status.get().connected;
 	}
 
 	
 	public boolean isOnCharger() {
-		return onCharger;
+		return status.get().onCharger;
+	}
+
+	/**
+	 * Returns the lifecycle state of this vehicle.
+	 * 
+	 * @return the state
+	 */
+	public VehicleState getState() {
+		return status.get().state;
+	}
+
+	/**
+	 * Adds a listener called for every transition of the lifecycle state.
+	 * 
+	 * @param listener the listener
+	 */
+	public void addStateListener(VehicleStateListener listener) {
+		stateListeners.add(listener);
+	}
+
+	/**
+	 * Removes a state listener.
+	 * 
+	 * @param listener the listener
+	 */
+	public void removeStateListener(VehicleStateListener listener) {
+		stateListeners.remove(listener);
+	}
+
+	/**
+	 * Returns a future completing as soon as this vehicle is in the given state, immediately if it is already.
+	 * <p>
+	 * The future is completed by the thread causing the transition, so dependent actions should be quick or async.
+	 * 
+	 * @param state the awaited state
+	 * @return future completing with this vehicle
+	 */
+	public CompletableFuture<Vehicle> whenState(VehicleState state) {
+		StateWaiter waiter = new StateWaiter(state);
+		stateWaiters.add(waiter);
+		if (getState() == state) { // transition before the waiter was added
+			waiter.future.complete(this);
+		}
+		waiter.future.whenComplete((v, e) -> stateWaiters.remove(waiter));
+		return waiter.future;
+	}
+
+	/**
+	 * Waits until this vehicle is in the given state.
+	 * 
+	 * @param state the awaited state
+	 * @param timeout the maximum time to wait
+	 * @return true, if the vehicle is in the state, false if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitState(VehicleState state, Duration timeout) throws InterruptedException {
+		CompletableFuture<Vehicle> future = whenState(state);
+		try {
+			future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			return false;
+		} catch (ExecutionException e) {
+			return false;
+		}
 	}
 
 	
@@ -147,14 +340,15 @@ public class Vehicle {
 	 * <ul>
 	 *   <li>is connected</li>
 	 *   <li>and not on charger</li>
-	 *   <li>and write characteristic is set</li>
-	 *   <li>and read characteristic is set</li>
+	 *   <li>and its link is ready, i.e. read and write characteristics are set</li>
 	 * </ul>
+	 * 
+	 * i.e. its state is {@link VehicleState#READY}. Use {@link #whenState(VehicleState)} instead of polling.
 	 *  
 	 * @return true, if vehicle ready to start, false otherwise
 	 */
 	public boolean isReadyToStart() {
-		return connected && !onCharger && writeCharacteristic != null && readCharacteristic != null;
+		return getState() == VehicleState.READY && (isDetached() || link.isReady());
 	}
 	
 	
@@ -162,16 +356,19 @@ public class Vehicle {
 	 * Disconnect the vehicle.
 	 * 
 	 * Disconnect is done by first send the ANKI disconnect message and then disconnect
-	 * the bluetooth device.
+	 * the bluetooth device. The disconnect message jumps the queue of outgoing messages.
+	 * A vehicle disconnected this way is not reconnected by the {@link ReconnectManager}.
 	 * 
+	 * @return future completing after the bluetooth device is disconnected
 	 */
-	public void disconnect() {
-		if (bluetoothDevice.getConnected()) {
-			bluetoothDevice.disableConnectedNotifications();
-			writeCharacteristic.writeValue(Message.disconnectMessage());
-			bluetoothDevice.disconnect();
+	public CompletableFuture<Void> disconnect() {
+		disconnectRequested = true;
+		if (!isDetached() && link.isConnected()) {
+			return commandQueue.submit(CommandQueue.Kind.DISCONNECT, Message.disconnectMessage())
+					.whenComplete((v, e) -> link.disconnect());
 		} else {
-			Logger.log(LogType.CONNECTED_NOTIFICATION, toShortString() + " not connected" );
+			Logger.log(LogType.CONNECTED_NOTIFICATION, () -> toShortString() + " not connected");
+			return CompletableFuture.completedFuture(null);
 		}
 	}
 	
@@ -185,6 +382,35 @@ public class Vehicle {
 		listeners.add(listener);
 	}
 
+	/**
+	 * Returns a publisher of the notifications of the given type of this vehicle.
+	 * <p>
+	 * In contrast to listeners, subscribers consume at their own pace: every subscriber gets notifications as requested,
+	 * at most {@link Configuration#getPublisherBufferSize()} are buffered, further notifications are handled by
+	 * {@link Configuration#getPublisherOverflowPolicy()}. Subscribers are completed if the vehicle is evicted.
+	 * 
+	 * @param <T> the notification type
+	 * @param type one of {@code PositionUpdate}, {@code TransitionUpdate}, {@code ChargerInfoNotification}, 
+	 *             {@code ConnectedNotification} or {@code PingResponse}
+	 * @return the publisher
+	 * @throws IllegalArgumentException if notifications of this type are not published
+	 */
+	public <T extends Notification> Flow.Publisher<T> publisher(Class<T> type) {
+		return publishers.get(type);
+	}
+
+	/**
+	 * Add a {@link NotificationListener} which is removed automatically after it is garbage collected,
+	 * so a listener of a short-lived object does not keep the object alive.
+	 * <p>
+	 * The caller must keep a reference to the listener as long as it should be called, a lambda passed directly is collected soon.
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addWeakNotificationListener(NotificationListener listener) {
+		listeners.addWeak(listener);
+	}
+
 	/**
 	 * Remove a {@link NotificationListener}.
 	 * 
@@ -194,367 +420,319 @@ public class Vehicle {
 		listeners.remove(listener);
 	}
 
+	/**
+	 * Add a {@link NotificationHandler}.
+	 * <p>
+	 * Handlers get decoded values by primitive callbacks, no notification objects are created for them.
+	 * 
+	 * @param handler the handler to add
+	 */
+	public void addNotificationHandler(NotificationHandler handler) {
+		listeners.addHandler(handler);
+	}
+
+	/**
+	 * Remove a {@link NotificationHandler}.
+	 * 
+	 * @param handler the handler to remove
+	 */
+	public void removeNotificationHandler(NotificationHandler handler) {
+		listeners.removeHandler(handler);
+	}
+
 	public String getMacAddress() {
-		return bluetoothDevice.getAddress();
+		return macAddress;
+	}
+
+	/**
+	 * Returns the MAC address as 48 bit value.
+	 * 
+	 * @return the MAC address as long
+	 */
+	public long getMac() {
+		return mac;
 	}
 
 	public Optional<Model> getModel() {
 		return model;
 	}
 
+	/**
+	 * Releases this vehicle after eviction: removes all listeners and handlers and releases the link.
+	 * The vehicle is not reconnected afterwards.
+	 */
+	void release() {
+		disconnectRequested = true;
+		listeners.clear();
+		publishers.close();
+		if (link != null) {
+			link.release();
+		}
+	}
+
+	/**
+	 * Removes weakly registered listeners which are garbage collected.
+	 */
+	void purgeListeners() {
+		listeners.purge();
+	}
+
+	/**
+	 * Called by the transport while a connection is being established.
+	 * 
+	 * @param connecting true, if connecting, false if the attempt is finished
+	 */
+	void connecting(boolean connecting) {
+		updateStatus(status -> status.connecting(connecting));
+	}
+
+	/**
+	 * Called by the transport after the link is initialized, i.e. characteristics and notifications are set up,
+	 * and by the {@link ReconnectManager} after a reconnected vehicle is restored.
+	 */
+	void initialized() {
+		updateStatus(Status::initialized);
+	}
+
+	/**
+	 * Called after the vehicle is reported ready, see {@link JAnki#onVehicleReady(java.util.function.Consumer)}.
+	 */
+	void announced() {
+		updateStatus(Status::announced);
+	}
+
+	/**
+	 * Replaces the status by compare and set, so readers never see a torn state, and informs listeners and waiters
+	 * if the state changed.
+	 */
+	private void updateStatus(UnaryOperator<Status> change) {
+		Status previous;
+		Status next;
+		do {
+			previous = status.get();
+			next = change.apply(previous);
+		} while (previous != next && !status.compareAndSet(previous, next));
+		if (previous.state != next.state) {
+			VehicleState from = previous.state;
+			VehicleState to = next.state;
+			Logger.log(LogType.CONNECTED_NOTIFICATION, () -> toShortString() + " " + from + " -> " + to);
+			for (VehicleStateListener listener : stateListeners) {
+				try {
+					listener.onTransition(this, from, to);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			for (StateWaiter waiter : stateWaiters) {
+				if (waiter.state == to) {
+					waiter.future.complete(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true, if this vehicle has no link to a transport, e.g. in {@link Replay}.
+	 * 
+	 * @return true, if detached
+	 */
+	public boolean isDetached() {
+		return link == null;
+	}
+
 	@Override
 	public int hashCode() {
-		return bluetoothDevice.hashCode();
+		return Long.hashCode(mac);
 	}
 
 	@Override
 	public boolean equals(Object obj) {
-		return obj instanceof Vehicle && ((Vehicle) obj).bluetoothDevice.equals(this.bluetoothDevice);
+		return obj instanceof Vehicle && ((Vehicle) obj).mac == this.mac;
 	}
 
 	@Override
 	public String toString() {
 		// @formatter:off
 		return toShortString()
-				+ ", connected " + (connected ? "\u2718" : "-") 
+				+ ", " + getState()
+				+ ", connected " + (isConnected() ? "\u2718" : "-") 
 				+ ", speed " + speed
-				+ ", on charger " + (onCharger ? "\u2718" : "-") 
-				+ ", read " + (readCharacteristic == null ? "-" : "\u2718")
-				+ ", write " + (writeCharacteristic == null ? "-" : "\u2718") 
-				+ ", listeners =" + listeners.stream().map(l -> l.getClass().getSimpleName()).map(Vehicle::upperCaseChars).collect(Collectors.toList());
+				+ ", on charger " + (isOnCharger() ? "\u2718" : "-") 
+				+ ", " + (link == null ? "detached" : link) 
+				+ ", listeners =" + listeners.all().stream().map(l -> l.getClass().getSimpleName()).map(Vehicle::upperCaseChars).collect(Collectors.toList());
 		// @formatter:on
 	}
 
 	public String toShortString() {
-		return (model.isPresent() ? model.get().toString() + "(" : "Vehicle(") + bluetoothDevice.getAddress() + ")";
+		return (model.isPresent() ? model.get().toString() + "(" : "Vehicle(") + macAddress + ")";
+
+	}
+
+	/**
+	 * Returns the number of value notifications dropped because the dispatch buffer was full.
+	 * <p>
+	 * Always 0 for synchronous dispatch, see {@link Configuration#setAsynchronousDispatch(boolean)}.
+	 * 
+	 * @return number of dropped notifications
+	 */
+	public long getDroppedNotifications() {
+		return notificationBuffer == null ? 0 : notificationBuffer.getDropped();
+	}
 
+	/**
+	 * Returns the number of value notifications waiting for dispatch.
+	 * <p>
+	 * Always 0 for synchronous dispatch, see {@link Configuration#setAsynchronousDispatch(boolean)}.
+	 * 
+	 * @return number of buffered notifications
+	 */
+	public int getPendingNotifications() {
+		return notificationBuffer == null ? 0 : notificationBuffer.getSize();
 	}
 
 	/**
 	 * Method called by BLE system for value notifications.
+	 * Records the notification in the journal, if enabled, before dispatching.
 	 * 
 	 * @param bytes The BLE message bytes
 	 */
-	private void onValueNotification(byte[] bytes) {
-		Logger.log(LogType.VALUE_NOTIFICATION, "Value notification: " + Arrays.toString(bytes));
+	void onValueNotification(byte[] bytes) {
+		Journal journal = JAnki.journal();
+		if (journal != null) {
+			journal.append(System.nanoTime(), mac, bytes);
+		}
+		if (notificationBuffer == null) {
+			dispatchValueNotification(bytes);
+		} else {
+			notificationBuffer.offer(bytes);
+		}
+	}
 
+	/**
+	 * Parses the value notification and calls the listeners. Counts notifications by type and records the time spent in listeners.
+	 * <p>
+	 * A message is parsed only if a listener or subscriber of this vehicle or the fleet needs its type, handlers get it
+	 * decoded without parsing. Messages nobody observes are counted and skipped after reading the message ID.
+	 * 
+	 * @param bytes The BLE message bytes
+	 */
+	void dispatchValueNotification(byte[] bytes) {
+		Logger.log(LogType.VALUE_NOTIFICATION, "Value notification: {}", bytes);
+
+		byte msgId = bytes.length > 1 ? bytes[1] : 0;
+		metrics.received(NotificationParser.typeOf(msgId));
+		boolean parse = listeners.needsParse(msgId) || publishers.observes(msgId) || JAnki.observes(msgId);
+		if (!parse && !listeners.hasHandlers()) {
+			metrics.skippedNotifications.increment();
+			return;
+		}
+		Notification notification = null;
+		if (parse) {
+			try {
+				notification = NotificationParser.parse(this, bytes);
+			} catch (Exception e) {
+				metrics.parseErrors.increment();
+				e.printStackTrace();
+				return;
+			}
+		}
+		long start = System.nanoTime();
 		try {
-			Notification notification = NotificationParser.parse(this, bytes);
-			if (notification instanceof PositionUpdate) {
-				PositionUpdate pu = (PositionUpdate) notification;
-				for (NotificationListener notificationListener : listeners) {
-					if (notificationListener instanceof PositionUpdateListener) {
-						((PositionUpdateListener) notificationListener).onPositionUpdate(pu);
-					}
-				}
+			listeners.fireDecoded(bytes);
+			if (notification == null) {
+				return; // handlers only
+			} else if (notification instanceof PositionUpdate) {
+				listeners.firePositionUpdate((PositionUpdate) notification);
 			} else if (notification instanceof TransitionUpdate) {
-				TransitionUpdate tu = (TransitionUpdate) notification;
-				for (NotificationListener notificationListener : listeners) {
-					if (notificationListener instanceof TransitionUpdateListener) {
-						((TransitionUpdateListener) notificationListener).onTransitionUpdate(tu);
-					}
-				}
+				listeners.fireTransitionUpdate((TransitionUpdate) notification);
 			} else if (notification instanceof ChargerInfoNotification) {
-				ChargerInfoNotification cin = (ChargerInfoNotification) notification;
-				for (NotificationListener notificationListener : listeners) {
-					if (notificationListener instanceof ChargerInfoNotificationListener) {
-						((ChargerInfoNotificationListener) notificationListener).onChargerInfoNotification(cin);
-					}
-				}
+				listeners.fireChargerInfoNotification((ChargerInfoNotification) notification);
+			} else if (notification instanceof PingResponse) {
+				listeners.firePingResponse((PingResponse) notification);
 			} else if (notification instanceof DefaultNotification) {
-				Logger.log(LogType.VALUE_NOTIFICATION, "Default notification: " + Arrays.toString(bytes) + ". Nothing happens.");
+				Logger.log(LogType.VALUE_NOTIFICATION, "Default notification: {}. Nothing happens.", bytes);
 			} else { // TODO is it ok to throw exception in try ?
 				throw new IllegalArgumentException("Unknown value notification message");
 			}
+			publish(notification);
 		} catch (Exception e) {
 			// try-catch to prevent swallowing thrown exception by TinyB, which calls this method
 			e.printStackTrace();
+		} finally {
+			metrics.listenerTime.record(System.nanoTime() - start);
 		}
 	}
 
 	/**
 	 * Method called by BLE system for connected notifications.
+	 * A lost connection is reported to the {@link ReconnectManager}, if enabled.
 	 * 
 	 * @param flag the connection value
 	 */
 
-	private void onConnectedNotification(boolean flag) {
-		Logger.log(LogType.CONNECTED_NOTIFICATION, "Connected notification: " + flag);
+	void onConnectedNotification(boolean flag) {
+		Logger.log(LogType.CONNECTED_NOTIFICATION, "Connected notification: {}", flag);
+		(flag ? metrics.connects : metrics.disconnects).increment();
 		try {
-			ConnectedNotification cn = new ConnectedNotification(this, flag);
-			for (NotificationListener notificationListener : listeners) {
-				if (notificationListener instanceof ConnectedNotificationListener) {
-					((ConnectedNotificationListener) notificationListener).onConnectedNotification(cn);
-				}
-			}
+			ConnectedNotification notification = new ConnectedNotification(this, flag);
+			listeners.fireConnectedNotification(notification);
+			publish(notification);
 		} catch (Exception e) {
 			// try-catch to prevent swallowing thrown exception by TinyB, which calls this method
 			e.printStackTrace();
 		}
+		ReconnectManager reconnectManager = JAnki.reconnectManager();
+		if (!flag && !disconnectRequested && reconnectManager != null) {
+			reconnectManager.onDisconnected(this);
+		}
 	}
 
-	private static String upperCaseChars(String str) {
-		StringBuilder sb = new StringBuilder();
-		str.codePoints().filter(ch -> Character.isUpperCase(ch)).forEach(sb::appendCodePoint);
-		return sb.toString();
+	/**
+	 * Offers the notification to the subscribers of this vehicle and of the fleet.
+	 */
+	private void publish(Notification notification) {
+		publishers.publish(notification);
+		JAnki.publish(notification);
 	}
 
 	/**
-	 * Class hiding the BLE stuff.
-	 * <p>
-	 * 
-	 * Genuine documentation of the Anki C implementation is
-	 * <a href="https://anki.github.io/drive-sdk/docs/programming-guide">Ankis Programming Guide</a>. 
-	 * As locale PDF: <a href="./doc-files/anki-programming-guide.pdf">Ankis Programming Guide</a>
-	 * <p>
-	 * 
-	 * TinyB documentation:  
-	 * <a href="http://iotdk.intel.com/docs/master/tinyb/java/annotated.html">TinyB Class List</a>
-	 * <p>
-	 * 
-	 * device.getBluetoothType() gibt Fehler:
-	 * https://github.com/intel-iot-devkit/tinyb/issues/69
-	 * 
+	 * Writes a message to the vehicle. Called by the command queue only.
 	 * 
-	 * @author bernd
-	 *
+	 * @param message the Anki message
+	 * @return true, if message was written
 	 */
-	private static class AnkiBle {
-
-		private static final String ANKI_SERVICE_UUID = "BE15BEEF-6186-407E-8381-0BD89C4D8DF4";
-		private static final String ANKI_READ_CHARACTERISTIC_UUID = "BE15BEE0-6186-407E-8381-0BD89C4D8DF4";
-		private static final String ANKI_WRITE_CHARACTERISTIC_UUID = "BE15BEE1-6186-407E-8381-0BD89C4D8DF4";
-
-		private static ScheduledExecutorService executor; // update devices asynchronously
-
-		private static final Map<LogType, Boolean> logToggles = new ConcurrentHashMap<>();
-
-		/*
-		 * Lock für Tipp aus Tinyb-Dokumentation: Do not attempt to perform multiple connections simultaneously. Instead, serialize all
-		 * connection attempts, so that connection, service discovery and characteristic discovery for one peripheral are completed before
-		 * attempting to establish another connection.
-		 * 
-		 */
-		private static ReentrantLock lock = new ReentrantLock();
-
-		private static void init() {
-			System.out.println("Initializing JAnki. Please wait ...");
-			Stream.of(LogType.values()).forEach(value -> logToggles.put(value, Boolean.FALSE));
-			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-				AnkiBle.disconnectAll();
-			}));
-			AnkiBle.discoverDevices();
-			AnkiBle.initializeDevices();
-			System.out.println("Initializing JAnki finished");
-			executor = Executors.newScheduledThreadPool(1);
-			executor.scheduleAtFixedRate(() -> AnkiBle.updateDevices(), 5, 10, TimeUnit.SECONDS);
-		}
-
-		/**
-		 * Returns the write characteristics of a hardware vehicle.
-		 * 
-		 * @param device device to get write characteristics for
-		 * @return the write characteristics of the device
-		 */
-		static BluetoothGattCharacteristic writeCharacteristicFor(BluetoothDevice device) {
-			return characteristicFor(ANKI_WRITE_CHARACTERISTIC_UUID, device);
-		}
-
-		/**
-		 * Returns the read characteristics of a hardware vehicle.
-		 * 
-		 * @param device device to get read characteristics for
-		 * @return the read characteristics of the device
-		 */
-		static BluetoothGattCharacteristic readCharacteristicFor(BluetoothDevice device) {
-			return characteristicFor(ANKI_READ_CHARACTERISTIC_UUID, device);
-		}
-
-		/**
-		 * Returns the read or write characteristics of a hardware vehicle.
-		 * 
-		 * @param characteristicUUID UUID of read or write characteristic
-		 * @param device the device for which the characteristic is set 
-		 * @return the characteristic
-		 */
-		private static BluetoothGattCharacteristic characteristicFor(String characteristicUUID, BluetoothDevice device) {
-			// direktes Lesen funktioniert nicht
-			// BluetoothGattService service = device.find(ANKI_SERVICE_UUID);
-			// BluetoothGattCharacteristic write = service.find(ANKI_WRITE_UUID);
-			// also iterieren
-
-			BluetoothGattCharacteristic readOrWriteCharacteristic = null;
-			lock.lock();
-			try {
-				for (int i = 0; i < 10; i++) {
-					boolean connected = device.connect();
-					if (connected) {
-						List<BluetoothGattService> services = device.getServices();
-						for (BluetoothGattService service : services) {
-							List<BluetoothGattCharacteristic> characteristics = service.getCharacteristics();
-							for (BluetoothGattCharacteristic characteristic : characteristics) {
-								if (characteristic.getUUID().toUpperCase().equals(characteristicUUID)) {
-									readOrWriteCharacteristic = characteristic;
-								}
-							}
-						}
-						if (readOrWriteCharacteristic != null) {
-							return readOrWriteCharacteristic;
-						}
-					} else {
-						System.out.println("no connection in 'characteristicFor()'");
-					}
-					sleep(100);
-				}
-			} finally {
-				lock.unlock();
-			}
-			return readOrWriteCharacteristic;
-		}
-
-		private static void sleep(long millis) {
-			try {
-				Thread.sleep(millis);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-
-		/**
-		 * Disconnect all Bluetooth devices.
-		 * 
-		 */
-		private static void disconnectAll() {
-			System.out.println("Disconnecting all devices...");
-			Vehicle.vehicles.entrySet().parallelStream().forEach(entry -> entry.getKey().disconnect());
+	private boolean write(byte[] message) {
+		if (isDetached()) {
+			throw new IllegalStateException(toShortString() + " not connected");
 		}
+		return link.write(message);
+	}
 
-		/**
-		 * Discover Anki devices.
-		 * 
-		 * @return the number of discovered devices
-		 */
-		public static Integer discoverDevices() {
-			BluetoothManager manager = BluetoothManager.getBluetoothManager();
-			Logger.log(LogType.DEVICE_DISCOVERY, "discovering bluetooth devices ...");
-			lock.lock();
-			try {
-				manager.startDiscovery();
-				List<BluetoothDevice> list = manager.getDevices();
-				for (BluetoothDevice device : list) {
-					if (Arrays.asList(device.getUUIDs()).contains(ANKI_SERVICE_UUID.toLowerCase())) {
-						if (Vehicle.getVehicles().stream().map(v -> v.bluetoothDevice.getAddress()).anyMatch(mac -> mac.equals(device.getAddress()))) {
-							Logger.log(LogType.DEVICE_DISCOVERY, "vehicle " + device.getAddress() + " already known");
-							Vehicle.vehicles.replace(Vehicle.get(device.getAddress()), System.nanoTime());
-						} else {
-							Vehicle vehicle = new Vehicle(device);
-							Vehicle.vehicles.put(vehicle, System.nanoTime());
-							Logger.log(LogType.DEVICE_DISCOVERY, "vehicle " + device.getAddress() + " added");
-							vehicle.bluetoothDevice.enableConnectedNotifications(flag -> {
-								vehicle.onConnectedNotification(flag);
-							});
-						}
-					}
-				}
-				Thread.sleep(1000); // stopDiscovery() should not be called to early
-				manager.stopDiscovery();
-				return list.size();
-			} catch (Exception e) {
-				e.printStackTrace();
-				return 0;
-			} finally {
-				lock.unlock();
-				Logger.log(LogType.DEVICE_DISCOVERY, "discovering bluetooth devices finished");
-			}
-		}
+	/**
+	 * Waits for the vehicle's turn, if the adapter-wide write rate is limited, see {@link Configuration#setWriteRate(double)}.
+	 * Used by the command queue before writing a throttled message.
+	 */
+	private final class WriteBudget implements CommandQueue.Throttle {
 
-		/**
-		 * Initialize all devices - at least try to.
-		 * 
-		 * <p>
-		 * This incldes
-		 * <ul>
-		 * 	<li> set read characteristic</li>
-		 * 	<li> set write characteristicsetzen </li>
-		 *  <li> set SDK modesetzen </li>
-		 * 	<li> register device for value notifications</li>
-		 * </ul>
-		 * 
-		 * @return number of initialized devices
-		 */
-		public static Integer initializeDevices() {
-			int numberOfInitializations = 0;
-			try {
-				Logger.log(LogType.DEVICE_INITIALIZATION, "initializing bluetooth devices ...");
-				Set<Entry<Vehicle, Long>> vehicles = Vehicle.vehicles.entrySet();
-				for (Entry<Vehicle, Long> entry : vehicles) {
-					Vehicle vehicle = entry.getKey();
-					if (!vehicle.connected) {
-						vehicle.bluetoothDevice.connect();
-					}
-					if (vehicle.writeCharacteristic == null) {
-						vehicle.writeCharacteristic = writeCharacteristicFor(vehicle.bluetoothDevice);
-						Logger.log(LogType.DEVICE_INITIALIZATION, "Write-Characteristic for " + vehicle + (vehicle == null ? " not " : "") + " set");
-						numberOfInitializations++;
-						if (vehicle.writeCharacteristic != null) {
-							vehicle.writeCharacteristic.writeValue(Message.getSdkMode());
-						}
-					}
-					if (vehicle.readCharacteristic == null) {
-						vehicle.readCharacteristic = readCharacteristicFor(vehicle.bluetoothDevice);
-						Logger.log(LogType.DEVICE_INITIALIZATION, "Read-Characteristic for " + vehicle + (vehicle == null ? " not " : ""));
-						numberOfInitializations++;
-						if (vehicle.readCharacteristic != null) {
-							vehicle.readCharacteristic.enableValueNotifications(bytes -> {
-								vehicle.onValueNotification(bytes);
-							});
-							Logger.log(LogType.DEVICE_INITIALIZATION, "Value notifications set for " + vehicle);
-						}
-					}
-				}
-				Logger.log(LogType.DEVICE_INITIALIZATION, "initializing bluetooth devices finished");
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			return numberOfInitializations;
+		@Override
+		public boolean acquire(BooleanSupplier cancelled) throws InterruptedException {
+			WriteScheduler writeScheduler = JAnki.writeScheduler();
+			return writeScheduler == null || writeScheduler.acquire(Vehicle.this, cancelled);
 		}
 
-		/**
-		 * Update Devices.
-		 * <p>
-		 * 
-		 * This method should be called repeatedly to
-		 * <ul>
-		 * 	<li> discover new devices</li>
-		 * 	<li> initialize known devices</li>
-		 *  <li> remove devices which haven't be seen for a long time</li>
-		 * </ul>
-		 * 
-		 * @author bernd
-		 *
-		 */
-		public static void updateDevices() {
-			Logger.log(LogType.DEVICE_UPDATE, "updating bluetooth devices");
-			// TODO Verhältnis discovered/initialized prüfen und sinnvoll darauf reagieren
-			try {
-				Integer numberOfDiscoveredDevices = CompletableFuture.supplyAsync(AnkiBle::discoverDevices).get(2000, TimeUnit.MILLISECONDS);
-				Logger.log(LogType.DEVICE_UPDATE, "number of discovered devices: " + numberOfDiscoveredDevices);
-				Integer numberOfInitializedDevices = CompletableFuture.supplyAsync(AnkiBle::initializeDevices).get(5000, TimeUnit.MILLISECONDS);
-				Logger.log(LogType.DEVICE_UPDATE, "number of initialized devices: " + numberOfInitializedDevices);
-			} catch (InterruptedException | ExecutionException | TimeoutException e) {
-				e.printStackTrace();
-			}
-			// TODO check: do we need this:
-			final long DEVICE_NOT_SEEN_NANO = 100_000_000_000L;
-			for (Entry<Vehicle, Long> entry : Vehicle.vehicles.entrySet()) {
-				if (System.nanoTime() - entry.getValue() > DEVICE_NOT_SEEN_NANO) {
-					System.out.println("should be removed (not productive): " + entry.getKey());
-					// Vehicle.vehicles.remove(entry.getKey());
-				}
+		@Override
+		public void wakeUp() {
+			WriteScheduler writeScheduler = JAnki.writeScheduler();
+			if (writeScheduler != null) {
+				writeScheduler.wakeUp();
 			}
-			Logger.log(LogType.DEVICE_UPDATE, "updating bluetooth devices finished");
 		}
+	}
 
+	private static String upperCaseChars(String str) {
+		StringBuilder sb = new StringBuilder();
+		str.codePoints().filter(ch -> Character.isUpperCase(ch)).forEach(sb::appendCodePoint);
+		return sb.toString();
 	}
 
 	public enum Model {
@@ -582,8 +760,8 @@ public class Vehicle {
 
 		@Override
 		public void onConnectedNotification(ConnectedNotification connectedNotification) {
-			Vehicle.this.connected = connectedNotification.isConnected();
-			
+			boolean connected = connectedNotification.isConnected();
+			updateStatus(status -> status.connected(connected));
 		}
 
 	}
@@ -592,10 +770,92 @@ public class Vehicle {
 
 		@Override
 		public void onChargerInfoNotification(ChargerInfoNotification chargerInfoNotification) {
-			Vehicle.this.onCharger = chargerInfoNotification.isOnCharger();
-			Logger.log(LogType.VALUE_NOTIFICATION, Vehicle.this.toShortString() + (Vehicle.this.onCharger ? " on " : " not on ") + "charger");
+			boolean onCharger = chargerInfoNotification.isOnCharger();
+			updateStatus(status -> status.onCharger(onCharger));
+			Logger.log(LogType.VALUE_NOTIFICATION, () -> Vehicle.this.toShortString() + (onCharger ? " on " : " not on ") + "charger");
+		}
+
+	}
+
+	private class DefaultPingResponseListener implements PingResponseListener {
+
+		@Override
+		public void onPingResponse(PingResponse pingResponse) {
+			long sent = pingSent.getAndSet(0);
+			if (sent != 0) {
+				metrics.pingRoundTrip.record(System.nanoTime() - sent);
+			}
+		}
+
+	}
+
+	/**
+	 * Immutable lifecycle facts of a vehicle and the state derived from them.
+	 */
+	private static final class Status {
+
+		private static final Status DISCOVERED = new Status(false, false, false, false, false, false);
+		private static final Status DETACHED = new Status(false, true, true, true, true, false);
+
+		private final boolean connecting;
+		private final boolean connected;
+		private final boolean everConnected;
+		private final boolean initialized; // link initialized by transport
+		private final boolean announced; // reported ready
+		private final boolean onCharger;
+		private final VehicleState state;
+
+		private Status(boolean connecting, boolean connected, boolean everConnected, boolean initialized, boolean announced, boolean onCharger) {
+			this.connecting = connecting;
+			this.connected = connected;
+			this.everConnected = everConnected;
+			this.initialized = initialized;
+			this.announced = announced;
+			this.onCharger = onCharger;
+			this.state = state();
+		}
+
+		private VehicleState state() {
+			if (!connected) {
+				return connecting ? VehicleState.CONNECTING : everConnected ? VehicleState.DISCONNECTED : VehicleState.DISCOVERED;
+			} else if (!initialized) {
+				return VehicleState.CONNECTING;
+			} else if (!announced) {
+				return VehicleState.INITIALIZED;
+			}
+			return onCharger ? VehicleState.ON_CHARGER : VehicleState.READY;
+		}
+
+		private Status connecting(boolean connecting) {
+			return connecting == this.connecting ? this : new Status(connecting, connected, everConnected, initialized, announced, onCharger);
+		}
+
+		private Status connected(boolean connected) {
+			// a lost connection loses characteristics and SDK mode, the link must be initialized again
+			return connected == this.connected ? this : new Status(connecting && !connected, connected, everConnected || connected, initialized && connected, announced, onCharger);
+		}
+
+		private Status initialized() {
+			return initialized ? this : new Status(connecting, connected, everConnected, true, announced, onCharger);
+		}
+
+		private Status announced() {
+			return announced ? this : new Status(connecting, connected, everConnected, true, true, onCharger);
 		}
 
+		private Status onCharger(boolean onCharger) {
+			return onCharger == this.onCharger ? this : new Status(connecting, connected, everConnected, initialized, announced, onCharger);
+		}
+	}
+
+	private static final class StateWaiter {
+
+		private final VehicleState state;
+		private final CompletableFuture<Vehicle> future = new CompletableFuture<>();
+
+		private StateWaiter(VehicleState state) {
+			this.state = state;
+		}
 	}
 
 }
@@ -0,0 +1,316 @@
+package de.pdbm.janki.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotification;
+import de.pdbm.janki.core.notifications.Notification;
+import de.pdbm.janki.core.notifications.PingResponse;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.TransitionUpdate;
+
+/**
+ * Metrics of one vehicle.
+ * <p>
+ *
+ * Counters are {@link LongAdder}s and latencies are recorded in {@link LatencyHistogram}s, so the BLE callback
+ * thread, the dispatch workers and the command queue writer update them without contention.
+ * Write metrics are kept by the {@link CommandQueue} of the vehicle.
+ *
+ * @author bernd
+ *
+ */
+class VehicleMetrics implements VehicleMetricsMBean {
+
+	private final Vehicle vehicle;
+
+	final LongAdder positionUpdates = new LongAdder();
+	final LongAdder transitionUpdates = new LongAdder();
+	final LongAdder chargerInfoNotifications = new LongAdder();
+	final LongAdder pingResponses = new LongAdder();
+	final LongAdder otherNotifications = new LongAdder();
+	final LongAdder skippedNotifications = new LongAdder();
+	final LongAdder parseErrors = new LongAdder();
+	final LongAdder connects = new LongAdder();
+	final LongAdder disconnects = new LongAdder();
+	final LongAdder reconnectAttempts = new LongAdder();
+	final LongAdder pingsSent = new LongAdder();
+	final LongAdder pingsLost = new LongAdder();
+	final LongAdder controlOverruns = new LongAdder();
+	final LongAdder throttledWrites = new LongAdder();
+	final LatencyHistogram listenerTime = new LatencyHistogram();
+	final LatencyHistogram pingRoundTrip = new LatencyHistogram();
+	final LatencyHistogram recoveryTime = new LatencyHistogram();
+	final LatencyHistogram controlJitter = new LatencyHistogram();
+	final LatencyHistogram throttleTime = new LatencyHistogram();
+
+	VehicleMetrics(Vehicle vehicle) {
+		this.vehicle = vehicle;
+	}
+
+	/**
+	 * Registers the MBeans of this vehicle and of the fleet, if not registered yet.
+	 */
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName fleet = new ObjectName(FleetMetrics.OBJECT_NAME);
+			if (!server.isRegistered(fleet)) {
+				server.registerMBean(new FleetMetrics(), fleet);
+			}
+			ObjectName name = objectName();
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Unregisters the MBean of this vehicle.
+	 */
+	void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = objectName();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private ObjectName objectName() throws JMException {
+		return new ObjectName("de.pdbm.janki:type=Vehicle,name=" + ObjectName.quote(vehicle.getMacAddress()));
+	}
+
+	@Override
+	public String getMacAddress() {
+		return vehicle.getMacAddress();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return vehicle.isConnected();
+	}
+
+	@Override
+	public long getPositionUpdates() {
+		return positionUpdates.sum();
+	}
+
+	@Override
+	public long getTransitionUpdates() {
+		return transitionUpdates.sum();
+	}
+
+	@Override
+	public long getChargerInfoNotifications() {
+		return chargerInfoNotifications.sum();
+	}
+
+	@Override
+	public long getOtherNotifications() {
+		return otherNotifications.sum();
+	}
+
+	@Override
+	public long getSkippedNotifications() {
+		return skippedNotifications.sum();
+	}
+
+	long getNotifications() {
+		return getPositionUpdates() + getTransitionUpdates() + getChargerInfoNotifications() + pingResponses.sum() + getOtherNotifications();
+	}
+
+	/**
+	 * Counts a received message by its type, before it is parsed or skipped.
+	 *
+	 * @param type the notification type of the message
+	 */
+	void received(Class<? extends Notification> type) {
+		if (type == PositionUpdate.class) {
+			positionUpdates.increment();
+		} else if (type == TransitionUpdate.class) {
+			transitionUpdates.increment();
+		} else if (type == ChargerInfoNotification.class) {
+			chargerInfoNotifications.increment();
+		} else if (type == PingResponse.class) {
+			pingResponses.increment();
+		} else {
+			otherNotifications.increment();
+		}
+	}
+
+	@Override
+	public long getParseErrors() {
+		return parseErrors.sum();
+	}
+
+	@Override
+	public long getDroppedNotifications() {
+		return vehicle.getDroppedNotifications();
+	}
+
+	@Override
+	public long getPublisherDrops() {
+		return vehicle.publishers.getDropped();
+	}
+
+	@Override
+	public long getListenerTimeMean() {
+		return listenerTime.getMean();
+	}
+
+	@Override
+	public long getListenerTimeP99() {
+		return listenerTime.getPercentile(99);
+	}
+
+	@Override
+	public long getListenerTimeMax() {
+		return listenerTime.getMax();
+	}
+
+	@Override
+	public long getWrites() {
+		return vehicle.getCommandQueue().getWrittenMessages();
+	}
+
+	@Override
+	public long getWriteFailures() {
+		return vehicle.getCommandQueue().getFailedMessages();
+	}
+
+	@Override
+	public long getWriteLatencyMean() {
+		return vehicle.getCommandQueue().getAverageWriteLatency();
+	}
+
+	@Override
+	public long getWriteLatencyP50() {
+		return vehicle.getCommandQueue().writeLatency.getPercentile(50);
+	}
+
+	@Override
+	public long getWriteLatencyP99() {
+		return vehicle.getCommandQueue().writeLatency.getPercentile(99);
+	}
+
+	@Override
+	public long getWriteLatencyMax() {
+		return vehicle.getCommandQueue().getMaxWriteLatency();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return vehicle.getCommandQueue().getQueueDepth();
+	}
+
+	@Override
+	public long getPingsSent() {
+		return pingsSent.sum();
+	}
+
+	@Override
+	public long getPingsLost() {
+		return pingsLost.sum();
+	}
+
+	@Override
+	public long getPingRoundTripP50() {
+		return pingRoundTrip.getPercentile(50);
+	}
+
+	@Override
+	public long getPingRoundTripP99() {
+		return pingRoundTrip.getPercentile(99);
+	}
+
+	@Override
+	public long getPingRoundTripMax() {
+		return pingRoundTrip.getMax();
+	}
+
+	@Override
+	public long getConnects() {
+		return connects.sum();
+	}
+
+	@Override
+	public long getDisconnects() {
+		return disconnects.sum();
+	}
+
+	@Override
+	public long getReconnects() {
+		return Math.max(0, connects.sum() - 1);
+	}
+
+	@Override
+	public long getReconnectAttempts() {
+		return reconnectAttempts.sum();
+	}
+
+	@Override
+	public long getRecoveries() {
+		return recoveryTime.getCount();
+	}
+
+	@Override
+	public long getRecoveryTimeMean() {
+		return recoveryTime.getMean();
+	}
+
+	@Override
+	public long getRecoveryTimeMax() {
+		return recoveryTime.getMax();
+	}
+
+	@Override
+	public long getControlTicks() {
+		return controlJitter.getCount();
+	}
+
+	@Override
+	public long getControlOverruns() {
+		return controlOverruns.sum();
+	}
+
+	@Override
+	public long getControlJitterP99() {
+		return controlJitter.getPercentile(99);
+	}
+
+	@Override
+	public long getControlJitterMax() {
+		return controlJitter.getMax();
+	}
+
+	@Override
+	public int getWriteWeight() {
+		return vehicle.getWriteWeight();
+	}
+
+	@Override
+	public long getThrottledWrites() {
+		return throttledWrites.sum();
+	}
+
+	@Override
+	public long getThrottleTimeP99() {
+		return throttleTime.getPercentile(99);
+	}
+
+	@Override
+	public long getThrottleTimeMax() {
+		return throttleTime.getMax();
+	}
+
+}
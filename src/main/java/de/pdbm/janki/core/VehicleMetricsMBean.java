@@ -0,0 +1,94 @@
+package de.pdbm.janki.core;
+
+/**
+ * JMX view of the metrics of one vehicle, registered as {@code de.pdbm.janki:type=Vehicle,name="<MAC address>"}.
+ * <p>
+ *
+ * Latencies are in nanoseconds, percentiles are at most 12.5% above the exact value.
+ *
+ * @author bernd
+ *
+ */
+public interface VehicleMetricsMBean {
+
+	String getMacAddress();
+
+	boolean isConnected();
+
+	long getPositionUpdates();
+
+	long getTransitionUpdates();
+
+	long getChargerInfoNotifications();
+
+	long getOtherNotifications();
+
+	long getParseErrors();
+
+	long getSkippedNotifications();
+
+	long getDroppedNotifications();
+
+	long getPublisherDrops();
+
+	long getListenerTimeMean();
+
+	long getListenerTimeP99();
+
+	long getListenerTimeMax();
+
+	long getWrites();
+
+	long getWriteFailures();
+
+	long getWriteLatencyMean();
+
+	long getWriteLatencyP50();
+
+	long getWriteLatencyP99();
+
+	long getWriteLatencyMax();
+
+	int getQueueDepth();
+
+	long getPingsSent();
+
+	long getPingsLost();
+
+	long getPingRoundTripP50();
+
+	long getPingRoundTripP99();
+
+	long getPingRoundTripMax();
+
+	long getConnects();
+
+	long getDisconnects();
+
+	long getReconnects();
+
+	long getReconnectAttempts();
+
+	long getRecoveries();
+
+	long getRecoveryTimeMean();
+
+	long getRecoveryTimeMax();
+
+	long getControlTicks();
+
+	long getControlOverruns();
+
+	long getControlJitterP99();
+
+	long getControlJitterMax();
+
+	int getWriteWeight();
+
+	long getThrottledWrites();
+
+	long getThrottleTimeP99();
+
+	long getThrottleTimeMax();
+
+}
@@ -0,0 +1,100 @@
+package de.pdbm.janki.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of all known vehicles, keyed by the 48 bit representation of their MAC address.
+ * <p>
+ * 
+ * Lookups are O(1) and never throw. Iteration uses an immutable snapshot, which is only rebuilt 
+ * if a vehicle is added or removed, so reading the list of vehicles does not copy.
+ * 
+ * @author bernd
+ *
+ */
+class VehicleRegistry {
+
+	private final Map<Long, Vehicle> vehicles = new ConcurrentHashMap<>();
+
+	private volatile List<Vehicle> snapshot = Collections.emptyList();
+
+	/**
+	 * Returns the vehicle with this MAC address.
+	 * 
+	 * @param mac the MAC address as long
+	 * @return the vehicle or empty optional, if not known
+	 */
+	Optional<Vehicle> find(long mac) {
+		return Optional.ofNullable(vehicles.get(mac));
+	}
+
+	/**
+	 * Returns the vehicle with this MAC address.
+	 * 
+	 * @param mac the MAC address
+	 * @return the vehicle or empty optional, if not known or MAC address is malformed
+	 */
+	Optional<Vehicle> find(String mac) {
+		try {
+			return find(MacAddress.toLong(mac));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Adds a vehicle, if no vehicle with the same MAC address is known, and registers its MBean.
+	 * 
+	 * @param vehicle the vehicle to add
+	 * @return true, if vehicle was added
+	 */
+	synchronized boolean add(Vehicle vehicle) {
+		if (vehicles.putIfAbsent(vehicle.getMac(), vehicle) != null) {
+			return false;
+		}
+		updateSnapshot();
+		Configuration configuration = JAnki.configuration();
+		if (configuration == null || configuration.isJmx()) {
+			vehicle.metrics.register();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a vehicle and unregisters its MBean.
+	 * 
+	 * @param vehicle the vehicle to remove
+	 * @return true, if vehicle was removed
+	 */
+	synchronized boolean remove(Vehicle vehicle) {
+		if (!vehicles.remove(vehicle.getMac(), vehicle)) {
+			return false;
+		}
+		updateSnapshot();
+		vehicle.metrics.unregister();
+		return true;
+	}
+
+	/**
+	 * Returns an immutable snapshot of all known vehicles.
+	 * 
+	 * @return all known vehicles
+	 */
+	List<Vehicle> snapshot() {
+		return snapshot;
+	}
+
+	int size() {
+		return vehicles.size();
+	}
+
+	private void updateSnapshot() {
+		snapshot = Collections.unmodifiableList(new ArrayList<>(vehicles.values()));
+	}
+
+}
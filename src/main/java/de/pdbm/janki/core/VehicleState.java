@@ -0,0 +1,46 @@
+package de.pdbm.janki.core;
+
+/**
+ * Lifecycle state of a {@link Vehicle}.
+ * <p>
+ *
+ * A vehicle is {@link #DISCOVERED}, gets {@link #CONNECTING} and {@link #INITIALIZED} by its transport and is {@link #READY}
+ * as soon as the transport reports it ready. Charger info switches between {@link #READY} and {@link #ON_CHARGER},
+ * a lost connection leads to {@link #DISCONNECTED} and, if reconnected, back to {@link #CONNECTING}.
+ *
+ * @author bernd
+ *
+ */
+public enum VehicleState {
+
+	/**
+	 * Known, but never connected.
+	 */
+	DISCOVERED,
+
+	/**
+	 * Connection is being established, or connected while characteristics and notifications are being set up.
+	 */
+	CONNECTING,
+
+	/**
+	 * Connected and link initialized, not yet reported ready.
+	 */
+	INITIALIZED,
+
+	/**
+	 * Connected, initialized and not on charger, i.e. ready to start.
+	 */
+	READY,
+
+	/**
+	 * Connected and initialized, but on charger.
+	 */
+	ON_CHARGER,
+
+	/**
+	 * Connection lost or closed.
+	 */
+	DISCONNECTED
+
+}
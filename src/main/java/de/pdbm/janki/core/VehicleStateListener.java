@@ -0,0 +1,22 @@
+package de.pdbm.janki.core;
+
+/**
+ * Listener for transitions of the {@link VehicleState}, see {@link Vehicle#addStateListener(VehicleStateListener)}.
+ *
+ * @author bernd
+ *
+ */
+@FunctionalInterface
+public interface VehicleStateListener {
+
+	/**
+	 * Called by the thread causing the transition, immediately after the state changed.
+	 * Listeners must return quickly and may be called concurrently for transitions in fast succession.
+	 *
+	 * @param vehicle the vehicle
+	 * @param from the previous state
+	 * @param to the new state
+	 */
+	void onTransition(Vehicle vehicle, VehicleState from, VehicleState to);
+
+}
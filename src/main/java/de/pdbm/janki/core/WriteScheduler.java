@@ -0,0 +1,170 @@
+package de.pdbm.janki.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Adapter-wide budget of writes, shared fairly by all vehicles.
+ * <p>
+ *
+ * All vehicles share one Bluetooth adapter. The budget is a token bucket refilled at {@link Configuration#getWriteRate()}
+ * messages per second, holding at most {@link Configuration#getWriteBurst()} tokens. The writer of every command queue
+ * takes a token before it writes a message, except for stop, disconnect and ping messages, which are written at once
+ * and do not consume the budget. A stop or disconnect command arriving while its writer waits for a token is written first. If vehicles have to wait, tokens are granted by smooth weighted round-robin,
+ * so a vehicle with weight 2 gets twice the writes of a vehicle with weight 1, see {@link Vehicle#setWriteWeight(int)},
+ * and a chatty controller cannot starve other vehicles. Throttled writes and the time spent waiting are recorded per vehicle.
+ *
+ * @author bernd
+ *
+ */
+final class WriteScheduler {
+
+	private final double tokensPerNano;
+	private final double burst;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private double tokens; // guarded by lock
+	private long refilled; // guarded by lock, nano time of last refill
+	private final Map<Vehicle, Slot> slots = new HashMap<>(); // guarded by lock
+	private final List<Slot> waiting = new ArrayList<>(); // guarded by lock
+
+	/**
+	 * Creates a scheduler.
+	 *
+	 * @param writesPerSecond the adapter-wide write rate
+	 * @param burst the number of writes possible at once after a pause
+	 */
+	WriteScheduler(double writesPerSecond, int burst) {
+		this.tokensPerNano = writesPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+		this.refilled = System.nanoTime();
+	}
+
+	/**
+	 * Waits for the turn of the vehicle to write one message.
+	 *
+	 * @param vehicle the vehicle
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void acquire(Vehicle vehicle) throws InterruptedException {
+		acquire(vehicle, () -> false);
+	}
+
+	/**
+	 * Waits for the turn of the vehicle to write one message, unless cancelled. Called by the writer of the vehicle's
+	 * command queue, which cancels if a stop or disconnect command arrives, see {@link #wakeUp()}.
+	 *
+	 * @param vehicle the vehicle
+	 * @param cancelled checked while waiting, called with the lock of this scheduler held
+	 * @return true, if the vehicle may write, false if cancelled
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean acquire(Vehicle vehicle, BooleanSupplier cancelled) throws InterruptedException {
+		long start = System.nanoTime();
+		boolean throttled = false;
+		lock.lock();
+		try {
+			Slot slot = slots.computeIfAbsent(vehicle, v -> new Slot());
+			slot.weight = vehicle.getWriteWeight();
+			waiting.add(slot);
+			try {
+				while (true) {
+					grant();
+					if (slot.granted) {
+						slot.granted = false;
+						break;
+					}
+					if (cancelled.getAsBoolean()) {
+						return false; // slot leaves the round-robin below
+					}
+					throttled = true;
+					changed.awaitNanos(Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano)));
+				}
+			} finally {
+				waiting.remove(slot); // if interrupted
+				slot.granted = false; // a token granted while interrupted is lost
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (throttled) {
+			vehicle.metrics.throttledWrites.increment();
+			vehicle.metrics.throttleTime.record(System.nanoTime() - start);
+		}
+		return true;
+	}
+
+	/**
+	 * Wakes up all waiting writers, so they check whether they are cancelled.
+	 */
+	void wakeUp() {
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forgets a vehicle, e.g. after eviction.
+	 *
+	 * @param vehicle the vehicle
+	 */
+	void remove(Vehicle vehicle) {
+		lock.lock();
+		try {
+			slots.remove(vehicle);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Grants available tokens to waiting vehicles, the vehicle with the highest current weight first.
+	 */
+	private void grant() {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - refilled) * tokensPerNano);
+		refilled = now;
+		boolean granted = false;
+		while (tokens >= 1 && !waiting.isEmpty()) {
+			int total = 0;
+			Slot next = null;
+			for (Slot slot : waiting) {
+				slot.current += slot.weight;
+				total += slot.weight;
+				if (next == null || slot.current > next.current) {
+					next = slot;
+				}
+			}
+			next.current -= total;
+			next.granted = true;
+			waiting.remove(next);
+			tokens -= 1;
+			granted = true;
+		}
+		if (granted) {
+			changed.signalAll();
+		}
+	}
+
+	/**
+	 * Round-robin state of a vehicle, guarded by lock.
+	 */
+	private static final class Slot {
+
+		private int weight = 1;
+		private int current;
+		private boolean granted;
+	}
+
+}
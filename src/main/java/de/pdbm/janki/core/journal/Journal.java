@@ -0,0 +1,152 @@
+package de.pdbm.janki.core.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Append-only journal of raw BLE notifications in memory-mapped segment files.
+ * <p>
+ *
+ * A segment starts with a header of magic number, version and run, followed by records of
+ * <pre>
+ * int  length of message
+ * long timestamp, {@link System#nanoTime()} of the writing JVM
+ * long MAC address, see {@link de.pdbm.janki.core.MacAddress}
+ * byte message[length]
+ * </pre>
+ * A length of 0 marks the end of a segment, so empty messages are not recorded. If a record does not fit, a new segment is started.
+ * Segments of an earlier run in the same directory are kept, the new run continues numbering. The run is the
+ * wall clock time a journal was opened, timestamps are comparable only within the same run.
+ * Appending copies the message into the mapped segment only, writing to disk is left to the operating system.
+ * <p>
+ *
+ * Use {@link JournalReader} to read a journal.
+ *
+ * @author bernd
+ *
+ */
+public class Journal implements Closeable {
+
+	static final int MAGIC = 0x4a4e4b4a; // JNKJ
+	static final int VERSION = 2;
+	static final int SEGMENT_HEADER_SIZE = 4 + 4 + 8;
+	static final int RECORD_HEADER_SIZE = 4 + 8 + 8;
+	static final String SEGMENT_PREFIX = "segment-";
+	static final String SEGMENT_SUFFIX = ".journal";
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long run;
+
+	private int segmentIndex; // guarded by this
+	private FileChannel channel; // guarded by this
+	private MappedByteBuffer segment; // guarded by this
+	private boolean closed; // guarded by this
+
+	/**
+	 * Opens a journal in the given directory, which is created if necessary.
+	 *
+	 * @param directory the journal directory
+	 * @param segmentSize size of a segment file in bytes
+	 * @throws IOException if the first segment cannot be created
+	 */
+	public Journal(Path directory, int segmentSize) throws IOException {
+		if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + 256) {
+			throw new IllegalArgumentException("segment size too small: " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		List<Path> segments = JournalReader.segments(directory);
+		segmentIndex = segments.isEmpty() ? 0 : JournalReader.segmentIndex(segments.get(segments.size() - 1)) + 1;
+		long previousRun = segments.isEmpty() ? 0 : JournalReader.run(segments.get(segments.size() - 1));
+		this.run = Math.max(System.currentTimeMillis(), previousRun + 1); // distinct even if reopened within a millisecond
+		openSegment();
+	}
+
+	/**
+	 * Appends a message. Does nothing after the journal is closed or if the message is empty.
+	 *
+	 * @param timestamp the monotonic timestamp in nanoseconds, i.e. {@link System#nanoTime()}
+	 * @param mac the MAC address of the vehicle
+	 * @param bytes the message
+	 */
+	public synchronized void append(long timestamp, long mac, byte[] bytes) {
+		if (closed || bytes.length == 0) { // length 0 is the end marker
+			return;
+		}
+		if (segment.remaining() < RECORD_HEADER_SIZE + bytes.length + 4) { // keep space for end marker
+			try {
+				rollover();
+			} catch (IOException e) {
+				e.printStackTrace();
+				closed = true;
+				return;
+			}
+		}
+		int position = segment.position();
+		segment.position(position + 4);
+		segment.putLong(timestamp);
+		segment.putLong(mac);
+		segment.put(bytes);
+		segment.putInt(position, bytes.length); // length last, a concurrent reader sees complete records only
+	}
+
+	/**
+	 * Returns the directory of the journal.
+	 *
+	 * @return the directory
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the run of this journal, the wall clock time it was opened.
+	 *
+	 * @return the run in milliseconds since the epoch
+	 */
+	public long getRun() {
+		return run;
+	}
+
+	/**
+	 * Returns the index of the segment currently written.
+	 *
+	 * @return the segment index
+	 */
+	public synchronized int getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			segment.force();
+			channel.close();
+		}
+	}
+
+	private void rollover() throws IOException {
+		channel.close(); // mapping stays valid, the operating system writes the segment to disk
+		segmentIndex++;
+		openSegment();
+	}
+
+	private void openSegment() throws IOException {
+		Path file = directory.resolve(JournalReader.segmentName(segmentIndex));
+		channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putLong(run);
+	}
+
+}
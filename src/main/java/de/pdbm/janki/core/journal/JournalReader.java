@@ -0,0 +1,162 @@
+package de.pdbm.janki.core.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the records of all segments of a {@link Journal} directory in order of writing.
+ * <p>
+ *
+ * Segments are mapped read-only one after another. Reading a journal which is still written returns
+ * the records written so far. Records of several runs are returned in order of the runs, see {@link JournalRecord#getRun()}.
+ *
+ * <pre>
+ * for (JournalRecord record : new JournalReader(directory)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public class JournalReader implements Iterable<JournalRecord> {
+
+	private final Path directory;
+
+	public JournalReader(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns an iterator over all records. An {@link UncheckedIOException} is thrown if a segment cannot be read.
+	 */
+	@Override
+	public Iterator<JournalRecord> iterator() {
+		try {
+			return new RecordIterator(segments(directory));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns all records as stream.
+	 *
+	 * @return stream of records
+	 */
+	public Stream<JournalRecord> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	static String segmentName(int index) {
+		return String.format("%s%08d%s", Journal.SEGMENT_PREFIX, index, Journal.SEGMENT_SUFFIX);
+	}
+
+	static int segmentIndex(Path segment) {
+		String name = segment.getFileName().toString();
+		return Integer.parseInt(name.substring(Journal.SEGMENT_PREFIX.length(), name.length() - Journal.SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Returns the segment files of the directory ordered by index.
+	 */
+	static List<Path> segments(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.getFileName().toString().matches(Journal.SEGMENT_PREFIX + "\\d{8}" + Journal.SEGMENT_SUFFIX.replace(".", "\\.")))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns the run of a segment, see {@link Journal#getRun()}.
+	 */
+	static long run(Path segment) throws IOException {
+		return map(segment).getLong();
+	}
+
+	/**
+	 * Maps a segment, positioned at the run in the header.
+	 */
+	private static ByteBuffer map(Path segment) throws IOException {
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < Journal.SEGMENT_HEADER_SIZE || buffer.getInt() != Journal.MAGIC) {
+				throw new IOException("not a journal segment: " + segment);
+			}
+			int version = buffer.getInt();
+			if (version != Journal.VERSION) {
+				throw new IOException("unsupported journal version " + version + ": " + segment);
+			}
+			return buffer;
+		}
+	}
+
+	private static class RecordIterator implements Iterator<JournalRecord> {
+
+		private final Iterator<Path> segments;
+		private ByteBuffer current;
+		private long run; // of current segment
+		private JournalRecord next;
+
+		private RecordIterator(List<Path> segments) {
+			this.segments = segments.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = readNext();
+			}
+			return next != null;
+		}
+
+		@Override
+		public JournalRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			JournalRecord record = next;
+			next = null;
+			return record;
+		}
+
+		private JournalRecord readNext() {
+			try {
+				while (true) {
+					if (current != null && current.remaining() >= Journal.RECORD_HEADER_SIZE) {
+						int length = current.getInt(current.position());
+						if (length > 0 && current.remaining() >= Journal.RECORD_HEADER_SIZE + length) {
+							current.getInt();
+							long timestamp = current.getLong();
+							long mac = current.getLong();
+							byte[] bytes = new byte[length];
+							current.get(bytes);
+							return new JournalRecord(run, timestamp, mac, bytes);
+						}
+					}
+					if (!segments.hasNext()) {
+						return null;
+					}
+					current = map(segments.next());
+					run = current.getLong();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
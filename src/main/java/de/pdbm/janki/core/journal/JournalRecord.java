@@ -0,0 +1,62 @@
+package de.pdbm.janki.core.journal;
+
+import java.util.Arrays;
+
+import de.pdbm.janki.core.MacAddress;
+
+/**
+ * Raw BLE notification read from a {@link Journal}.
+ *
+ * @author bernd
+ *
+ */
+public final class JournalRecord {
+
+	private final long run;
+	private final long timestamp;
+	private final long mac;
+	private final byte[] bytes;
+
+	public JournalRecord(long timestamp, long mac, byte[] bytes) {
+		this(0, timestamp, mac, bytes);
+	}
+
+	public JournalRecord(long run, long timestamp, long mac, byte[] bytes) {
+		this.run = run;
+		this.timestamp = timestamp;
+		this.mac = mac;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Returns the run the record was written in, the wall clock time the journal was opened.
+	 *
+	 * @return the run in milliseconds since the epoch, 0 if unknown
+	 */
+	public long getRun() {
+		return run;
+	}
+
+	/**
+	 * Returns the monotonic timestamp in nanoseconds. Only differences of timestamps of the same run are meaningful.
+	 *
+	 * @return the timestamp
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getMac() {
+		return mac;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "JournalRecord [run=" + run + ", timestamp=" + timestamp + ", mac=" + MacAddress.toString(mac) + ", bytes=" + Arrays.toString(bytes) + "]";
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+ * Binary journal of raw BLE notifications for post-race analysis and replay.
+ * 
+ * @author bernd
+ *
+ */
+package de.pdbm.janki.core.journal;
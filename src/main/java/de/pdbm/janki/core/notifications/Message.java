@@ -1,7 +1,6 @@
 package de.pdbm.janki.core.notifications;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -16,17 +15,13 @@ import java.io.IOException;
  * <a href="https://github.com/anki/drive-sdk/blob/master/include/ankidrive/protocol.h">protocol.h</a>
  * </p>
  * 
+ * Die Nachrichten werden mit {@link MessageEncoder} kodiert, der auch in vorhandene Puffer schreiben kann.
+ * 
  * @author bernd
  *
  */
 public class Message {
 
-	private static final byte SET_SPEED = 0x24;
-	private static final byte CHANGE_LANE= 0x25;
-	private static final byte SET_OFFSET_FROM_ROAD_CENTER = 0x2c;
-	private static final byte DISCONNECT = 0x0d;
-	
-	
 	/**
 	 * Returns message representing 'set sdk mode to 1'.
 	 * 
@@ -36,7 +31,7 @@ public class Message {
 	 * 
 	 */
 	public static byte[] getSdkMode() {
-		return new byte[] {3, -112, 1, 1};
+		return MessageEncoder.SDK_MODE_MESSAGE.clone();
 	}
 	
 
@@ -46,7 +41,17 @@ public class Message {
 	 * @return message representing the disconnect message
 	 */
 	public static byte[] disconnectMessage() {
-		return new byte[]{1, DISCONNECT};
+		return MessageEncoder.DISCONNECT_MESSAGE.clone();
+	}
+	
+
+	/**
+	 * Returns a ping request, the vehicle answers with a {@link PingResponse}.
+	 * 
+	 * @return message representing a ping request
+	 */
+	public static byte[] pingMessage() {
+		return MessageEncoder.PING_MESSAGE.clone();
 	}
 	
 
@@ -68,54 +73,16 @@ public class Message {
 	 * 
 	 */
 	public static byte[] speedMessage(short speed, short acceleration) {
-		/* from protocol.h:
-		typedef struct anki_vehicle_msg_set_speed {
-		    uint8_t     size;
-		    uint8_t     msg_id;
-		    int16_t     speed_mm_per_sec;  // mm/sec
-		    int16_t     accel_mm_per_sec2; // mm/sec^2
-		    uint8_t     respect_road_piece_speed_limit;
-		}
-		*/
-		try {
-			ByteArrayOutputStream os = new ByteArrayOutputStream( );
-			os.write(new byte[] {6, SET_SPEED});
-			os.write(shortToBytes(speed));
-			os.write(shortToBytes(acceleration));
-			os.write(new byte[] {0});
-			return os.toByteArray();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
+		byte[] bytes = new byte[MessageEncoder.SPEED_SIZE];
+		MessageEncoder.speed(ByteBuffer.wrap(bytes), speed, acceleration);
+		return bytes;
 	}
 	
 	
 	public static byte[] changeLaneMessage(short speed, short acceleration, float offset)  {
-		/* from protocol.h: 
-		typedef struct anki_vehicle_msg_change_lane {
-	    uint8_t     size;
-	    uint8_t     msg_id;
-	    uint16_t    horizontal_speed_mm_per_sec;
-	    uint16_t    horizontal_accel_mm_per_sec2; 
-	    float       offset_from_road_center_mm;
-	    uint8_t     hop_intent;
-	    uint8_t     tag;
-		}
-		*/
-		try {
-			ByteArrayOutputStream os = new ByteArrayOutputStream( );
-			os.write(new byte[] {11, CHANGE_LANE});
-			os.write(shortToBytes(speed));
-			os.write(shortToBytes(acceleration));
-			os.write(floatToBytes(offset));
-			os.write(new byte[] {0});
-			os.write(new byte[] {0});
-			return os.toByteArray();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
+		byte[] bytes = new byte[MessageEncoder.CHANGE_LANE_SIZE];
+		MessageEncoder.changeLane(ByteBuffer.wrap(bytes), speed, acceleration, offset);
+		return bytes;
 	}
 	
 	
@@ -126,39 +93,9 @@ public class Message {
 	 * @return the offset from road center message
 	 */
 	public static byte[] setOffsetFromRoadCenter() {
-		/* from protocol.h:
-		typedef struct anki_vehicle_msg_set_offset_from_road_center {
-		    uint8_t     size;
-		    uint8_t     msg_id;
-		    float       offset_mm;
-		}
-		*/
-		try {
-			ByteArrayOutputStream os = new ByteArrayOutputStream( );
-			os.write(new byte[] {5, SET_OFFSET_FROM_ROAD_CENTER});
-			os.write(floatToBytes(0.0f));
-			return os.toByteArray();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-	}
-	
-	private static byte[] shortToBytes(short value) {
-		byte[] bytes = new byte[2];
-		bytes[0] = (byte)(value & 0xff);
-		bytes[1] = (byte)((value >> 8) & 0xff);
-		return bytes;
-	}
-	
-	
-	private static byte[] floatToBytes(float value) {
-		int bits = Float.floatToIntBits(value);
-		byte[] bytes = new byte[4];
-		bytes[0] = (byte)(bits & 0xff);
-		bytes[1] = (byte)((bits >> 8) & 0xff);
-		bytes[2] = (byte)((bits >> 16) & 0xff);
-		bytes[3] = (byte)((bits >> 24) & 0xff);
+		byte[] bytes = new byte[MessageEncoder.OFFSET_FROM_ROAD_CENTER_SIZE];
+		MessageEncoder.offsetFromRoadCenter(ByteBuffer.wrap(bytes), 0.0f);
 		return bytes;
 	}
+
 }
@@ -0,0 +1,190 @@
+package de.pdbm.janki.core.notifications;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation free encoding of Anki BLE messages into caller supplied buffers.
+ * <p>
+ *
+ * All multi-byte values are written little-endian as defined by
+ * <a href="https://github.com/anki/drive-sdk/blob/master/include/ankidrive/protocol.h">protocol.h</a>,
+ * independent of the byte order of the buffer. Each method writes at the position of the buffer,
+ * advances the position and returns the number of bytes written. If there is not enough space left
+ * a {@link BufferOverflowException} is thrown and the buffer is unchanged.
+ * <p>
+ *
+ * {@link #buffer()} returns a per thread buffer which can be used if the caller has no buffer of its own.
+ *
+ * @author bernd
+ *
+ */
+public class MessageEncoder {
+
+	/**
+	 * Maximum size of an Anki BLE message.
+	 */
+	public static final int MAX_SIZE = 20;
+
+	public static final int SDK_MODE_SIZE = 4;
+	public static final int DISCONNECT_SIZE = 2;
+	public static final int SPEED_SIZE = 7;
+	public static final int CHANGE_LANE_SIZE = 12;
+	public static final int OFFSET_FROM_ROAD_CENTER_SIZE = 6;
+	public static final int PING_SIZE = 2;
+
+	static final byte SET_SPEED = 0x24;
+	static final byte CHANGE_LANE = 0x25;
+	static final byte SET_OFFSET_FROM_ROAD_CENTER = 0x2c;
+	static final byte DISCONNECT = 0x0d;
+	static final byte PING = 0x16;
+
+	static final byte[] SDK_MODE_MESSAGE = new byte[] {3, -112, 1, 1};
+	static final byte[] DISCONNECT_MESSAGE = new byte[] {1, DISCONNECT};
+	static final byte[] PING_MESSAGE = new byte[] {1, PING};
+
+	private static final ByteBuffer SDK_MODE_BUFFER = ByteBuffer.wrap(SDK_MODE_MESSAGE).asReadOnlyBuffer();
+	private static final ByteBuffer DISCONNECT_BUFFER = ByteBuffer.wrap(DISCONNECT_MESSAGE).asReadOnlyBuffer();
+
+	private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_SIZE));
+
+	private MessageEncoder() {
+	}
+
+	/**
+	 * Returns the cleared buffer of the current thread, large enough for every message.
+	 * <p>
+	 * The buffer is reused by the next call in the same thread, so it must not be kept.
+	 *
+	 * @return the buffer of the current thread
+	 */
+	public static ByteBuffer buffer() {
+		ByteBuffer buffer = BUFFERS.get();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a read-only view of the cached 'set sdk mode to 1' message.
+	 *
+	 * @return the sdk mode message
+	 */
+	public static ByteBuffer sdkModeMessage() {
+		return SDK_MODE_BUFFER.duplicate();
+	}
+
+	/**
+	 * Returns a read-only view of the cached disconnect message.
+	 *
+	 * @return the disconnect message
+	 */
+	public static ByteBuffer disconnectMessage() {
+		return DISCONNECT_BUFFER.duplicate();
+	}
+
+	/**
+	 * Writes the 'set sdk mode to 1' message.
+	 *
+	 * @param buffer the target buffer
+	 * @return number of bytes written
+	 */
+	public static int sdkMode(ByteBuffer buffer) {
+		buffer.put(SDK_MODE_MESSAGE);
+		return SDK_MODE_SIZE;
+	}
+
+	/**
+	 * Writes the disconnect message.
+	 *
+	 * @param buffer the target buffer
+	 * @return number of bytes written
+	 */
+	public static int disconnect(ByteBuffer buffer) {
+		buffer.put(DISCONNECT_MESSAGE);
+		return DISCONNECT_SIZE;
+	}
+
+	/**
+	 * Writes a ping request. The vehicle answers with a ping response, see {@link PingResponse}.
+	 *
+	 * @param buffer the target buffer
+	 * @return number of bytes written
+	 */
+	public static int ping(ByteBuffer buffer) {
+		buffer.put(PING_MESSAGE);
+		return PING_SIZE;
+	}
+
+	/**
+	 * Writes a speed message.
+	 *
+	 * @param buffer the target buffer
+	 * @param speed the speed in mm/sec
+	 * @param acceleration the acceleration in mm/sec^2
+	 * @return number of bytes written
+	 */
+	public static int speed(ByteBuffer buffer, short speed, short acceleration) {
+		int p = reserve(buffer, SPEED_SIZE);
+		buffer.put(p, (byte) (SPEED_SIZE - 1)).put(p + 1, SET_SPEED);
+		putShort(buffer, p + 2, speed);
+		putShort(buffer, p + 4, acceleration);
+		buffer.put(p + 6, (byte) 0); // respect_road_piece_speed_limit
+		return SPEED_SIZE;
+	}
+
+	/**
+	 * Writes a change lane message.
+	 *
+	 * @param buffer the target buffer
+	 * @param speed the horizontal speed in mm/sec
+	 * @param acceleration the horizontal acceleration in mm/sec^2
+	 * @param offset the offset from road center in mm
+	 * @return number of bytes written
+	 */
+	public static int changeLane(ByteBuffer buffer, short speed, short acceleration, float offset) {
+		int p = reserve(buffer, CHANGE_LANE_SIZE);
+		buffer.put(p, (byte) (CHANGE_LANE_SIZE - 1)).put(p + 1, CHANGE_LANE);
+		putShort(buffer, p + 2, speed);
+		putShort(buffer, p + 4, acceleration);
+		putFloat(buffer, p + 6, offset);
+		buffer.put(p + 10, (byte) 0); // hop_intent
+		buffer.put(p + 11, (byte) 0); // tag
+		return CHANGE_LANE_SIZE;
+	}
+
+	/**
+	 * Writes a set offset from road center message.
+	 *
+	 * @param buffer the target buffer
+	 * @param offset the offset in mm
+	 * @return number of bytes written
+	 */
+	public static int offsetFromRoadCenter(ByteBuffer buffer, float offset) {
+		int p = reserve(buffer, OFFSET_FROM_ROAD_CENTER_SIZE);
+		buffer.put(p, (byte) (OFFSET_FROM_ROAD_CENTER_SIZE - 1)).put(p + 1, SET_OFFSET_FROM_ROAD_CENTER);
+		putFloat(buffer, p + 2, offset);
+		return OFFSET_FROM_ROAD_CENTER_SIZE;
+	}
+
+	/**
+	 * Checks the space left once, advances the position and returns the start index of the message.
+	 */
+	private static int reserve(ByteBuffer buffer, int size) {
+		int position = buffer.position();
+		if (buffer.limit() - position < size) {
+			throw new BufferOverflowException();
+		}
+		buffer.position(position + size);
+		return position;
+	}
+
+	private static void putShort(ByteBuffer buffer, int index, short value) {
+		buffer.put(index, (byte) value).put(index + 1, (byte) (value >> 8));
+	}
+
+	private static void putFloat(ByteBuffer buffer, int index, float value) {
+		int bits = Float.floatToIntBits(value);
+		buffer.put(index, (byte) bits).put(index + 1, (byte) (bits >> 8)).put(index + 2, (byte) (bits >> 16)).put(index + 3, (byte) (bits >> 24));
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.pdbm.janki.core.notifications;
+
+import de.pdbm.janki.core.RoadPiece;
+
+/**
+ * Primitive callbacks for allocation free decoding of Anki BLE messages, 
+ * see {@link NotificationParser#decode(byte[], int, NotificationHandler)}.
+ * <p>
+ * 
+ * In contrast to {@link NotificationListener} no notification objects are created. All methods have
+ * empty default implementations, so a handler implements only the callbacks it is interested in.
+ * 
+ * @author bernd
+ *
+ */
+public interface NotificationHandler {
+
+	/**
+	 * Called for a position update.
+	 * 
+	 * @param location the location ID
+	 * @param roadPieceId the Anki road piece ID
+	 * @param roadPiece the road piece or null, if road piece ID is unknown
+	 * @param ascendingLocations true, if location IDs are passed in ascending order
+	 */
+	default void onPositionUpdate(int location, int roadPieceId, RoadPiece roadPiece, boolean ascendingLocations) {
+	}
+
+	/**
+	 * Called for a transition update.
+	 * <p>
+	 * With the current firmware both indices are always 0.
+	 * 
+	 * @param roadPieceIndex index of the new road piece
+	 * @param previousRoadPieceIndex index of the previous road piece
+	 */
+	default void onTransitionUpdate(int roadPieceIndex, int previousRoadPieceIndex) {
+	}
+
+	/**
+	 * Called for a charger info.
+	 * 
+	 * @param unknown meaning unknown
+	 * @param onCharger true, if vehicle is on charger
+	 * @param loading true, if vehicle is loading
+	 * @param full true, if vehicle is fully loaded
+	 */
+	default void onChargerInfo(boolean unknown, boolean onCharger, boolean loading, boolean full) {
+	}
+
+	/**
+	 * Called for a ping response.
+	 */
+	default void onPingResponse() {
+	}
+
+	/**
+	 * Called for all other messages.
+	 * 
+	 * @param msgId the message ID
+	 * @param bytes the array containing the message
+	 * @param offset offset of the message in the array
+	 */
+	default void onOther(byte msgId, byte[] bytes, int offset) {
+	}
+
+}
@@ -1,5 +1,7 @@
 package de.pdbm.janki.core.notifications;
 
+import java.nio.ByteBuffer;
+
 import de.pdbm.janki.core.RoadPiece;
 import de.pdbm.janki.core.Vehicle;
 
@@ -21,12 +23,34 @@ public class NotificationParser {
 	static final byte POSITION_UPDATE   = 0x27; // decimal 39
 	static final byte TRANSITION_UPDATE = 0x29; // decimal 41
 	static final byte CHARGER_INFO      = 0x3f; // decimal 63
+	static final byte PING_RESPONSE     = 0x17; // decimal 23
 	// am Ende immer {7, 54, ...} 0x36 und {3, 77, ...} 0x4D
 	
 	
 	private NotificationParser() {
 	}
 
+	/**
+	 * Returns the notification type of a message ID, without reading the message.
+	 * 
+	 * @param msgId the message ID, i.e. the second byte of an Anki BLE message
+	 * @return the type {@link #parse(Vehicle, byte[])} returns for this ID
+	 */
+	public static Class<? extends Notification> typeOf(byte msgId) {
+		switch (msgId) {
+		case TRANSITION_UPDATE:
+			return TransitionUpdate.class;
+		case POSITION_UPDATE:
+			return PositionUpdate.class;
+		case CHARGER_INFO:
+			return ChargerInfoNotification.class;
+		case PING_RESPONSE:
+			return PingResponse.class;
+		default:
+			return DefaultNotification.class;
+		}
+	}
+
 	/**
 	 * Parses the Anki BLE message for some vehicle and returns it as a sub type of {@link Notification}.
 	 * 
@@ -102,15 +126,86 @@ public class NotificationParser {
 		
 		case CHARGER_INFO: {
 			/* no Anki documentation found */
-			return new ChargerInfoNotification(vehicle,
-					new Boolean(bytes[2] != 0), new Boolean(bytes[3] != 0), 
-					new Boolean(bytes[4] != 0), new Boolean(bytes[5] != 0));
+			return new ChargerInfoNotification(vehicle, bytes[2] != 0, bytes[3] != 0, bytes[4] != 0, bytes[5] != 0);
+		}
+		
+		case PING_RESPONSE: {
+			/* answer to ANKI_VEHICLE_MSG_C2V_PING_REQUEST, no payload */
+			return new PingResponse(vehicle);
 		}
 		
 		default:
 			return new DefaultNotification(vehicle, bytes);
 		}
 	}
+
+	/**
+	 * Decodes the Anki BLE message without allocating objects and calls the matching handler method.
+	 * <p>
+	 * Unlike {@link #parse(Vehicle, byte[])} unknown road pieces and unexpected transition updates 
+	 * do not throw exceptions, raw IDs are passed to the handler instead.
+	 * 
+	 * @param bytes array containing the Anki BLE message
+	 * @param offset offset of the message in the array, i.e. of the size byte
+	 * @param handler the handler to call
+	 */
+	public static void decode(byte[] bytes, int offset, NotificationHandler handler) {
+		switch (bytes[offset + 1]) {
+		case TRANSITION_UPDATE:
+			handler.onTransitionUpdate(bytes[offset + 2] & 0xFF, bytes[offset + 3] & 0xFF);
+			break;
+		case POSITION_UPDATE:
+			int roadPieceId = bytes[offset + 3] & 0xFF;
+			handler.onPositionUpdate(bytes[offset + 2] & 0xFF, roadPieceId, RoadPiece.forId(roadPieceId), (bytes[offset + 10] & 0x40) != 0x40);
+			break;
+		case CHARGER_INFO:
+			handler.onChargerInfo(bytes[offset + 2] != 0, bytes[offset + 3] != 0, bytes[offset + 4] != 0, bytes[offset + 5] != 0);
+			break;
+		case PING_RESPONSE:
+			handler.onPingResponse();
+			break;
+		default:
+			handler.onOther(bytes[offset + 1], bytes, offset);
+		}
+	}
+
+	/**
+	 * Decodes the Anki BLE message at the buffer's position without allocating objects and calls the 
+	 * matching handler method. The buffer's position is not changed.
+	 * 
+	 * @param buffer buffer containing the Anki BLE message at its position
+	 * @param handler the handler to call
+	 * @see #decode(byte[], int, NotificationHandler)
+	 */
+	public static void decode(ByteBuffer buffer, NotificationHandler handler) {
+		if (buffer.hasArray()) {
+			decode(buffer.array(), buffer.arrayOffset() + buffer.position(), handler);
+			return;
+		}
+		int offset = buffer.position();
+		switch (buffer.get(offset + 1)) {
+		case TRANSITION_UPDATE:
+			handler.onTransitionUpdate(buffer.get(offset + 2) & 0xFF, buffer.get(offset + 3) & 0xFF);
+			break;
+		case POSITION_UPDATE:
+			int roadPieceId = buffer.get(offset + 3) & 0xFF;
+			handler.onPositionUpdate(buffer.get(offset + 2) & 0xFF, roadPieceId, RoadPiece.forId(roadPieceId), (buffer.get(offset + 10) & 0x40) != 0x40);
+			break;
+		case CHARGER_INFO:
+			handler.onChargerInfo(buffer.get(offset + 2) != 0, buffer.get(offset + 3) != 0, buffer.get(offset + 4) != 0, buffer.get(offset + 5) != 0);
+			break;
+		case PING_RESPONSE:
+			handler.onPingResponse();
+			break;
+		default:
+			// handler needs an array, copying is the price of a direct buffer for unknown messages
+			byte[] bytes = new byte[(buffer.get(offset) & 0xFF) + 1];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(offset + i);
+			}
+			handler.onOther(bytes[1], bytes, 0);
+		}
+	}
 	
 	
 	@SuppressWarnings("unused") 
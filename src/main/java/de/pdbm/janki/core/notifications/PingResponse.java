@@ -0,0 +1,25 @@
+package de.pdbm.janki.core.notifications;
+
+import de.pdbm.janki.core.Vehicle;
+
+/**
+ * Answer of a vehicle to a ping request, see {@link Message#pingMessage()}.
+ * <p>
+ * 
+ * The response has no payload, so it is correlated with the one outstanding ping request of the vehicle.
+ * 
+ * @author bernd
+ *
+ */
+public final class PingResponse extends Notification {
+
+	public PingResponse(Vehicle vehicle) {
+		super(vehicle);
+	}
+
+	@Override
+	public String toString() {
+		return "PingResponse";
+	}
+
+}
@@ -0,0 +1,7 @@
+package de.pdbm.janki.core.notifications;
+
+public interface PingResponseListener extends NotificationListener {
+
+	void onPingResponse(PingResponse pingResponse);
+
+}
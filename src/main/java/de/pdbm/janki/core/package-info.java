@@ -3,7 +3,8 @@
  * JAnki is a simple library to use Anki Overdrive with Java.
  * 
  * <p>
- * The class Vehicle is your entry point to use JAnki. 
+ * Start JAnki with {@link de.pdbm.janki.core.JAnki#start(de.pdbm.janki.core.Configuration)}. The class Vehicle
+ * is your entry point to control vehicles. 
  * 
  * @author bernd
  *
@@ -0,0 +1,186 @@
+package de.pdbm.janki.simulation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.LockSupport;
+
+import de.pdbm.janki.core.Configuration;
+import de.pdbm.janki.core.RoadPiece;
+import de.pdbm.janki.core.Transport;
+import de.pdbm.janki.core.TransportContext;
+import de.pdbm.janki.core.Vehicle;
+import de.pdbm.janki.core.Vehicle.Model;
+
+/**
+ * Transport simulating vehicles driving on a layout of road pieces, on a virtual clock.
+ * <p>
+ *
+ * All vehicles are attached, connected and ready immediately after start. A single simulation thread
+ * advances the virtual clock in ticks and steps all vehicles, which emit their notifications on this thread.
+ * The time scale relates virtual time to wall clock time, {@link #MAX_SPEED} runs as fast as possible:
+ *
+ * <pre>
+ * JAnki.start(new Configuration().setTransport(new SimulatedTransport(100, SimulatedTransport.OVAL).setTimeScale(10)));
+ * </pre>
+ *
+ * @author bernd
+ *
+ */
+public class SimulatedTransport implements Transport {
+
+	/**
+	 * Time scale to simulate as fast as possible.
+	 */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Oval of the Anki starter kit.
+	 */
+	public static final RoadPiece[] OVAL = {RoadPiece.START, RoadPiece.STRAIGHT, RoadPiece.CORNER, RoadPiece.CORNER,
+			RoadPiece.STRAIGHT, RoadPiece.STRAIGHT, RoadPiece.CORNER, RoadPiece.CORNER, RoadPiece.FINISH};
+
+	private static final long FIRST_MAC = 0x020000000000L; // locally administered addresses
+
+	private final List<SimulatedVehicle> vehicles = new ArrayList<>();
+
+	private volatile double timeScale = 1.0;
+
+	private volatile long tickNanos = Duration.ofMillis(10).toNanos();
+
+	private long virtualTime; // guarded by this
+
+	private volatile Thread thread;
+
+	/**
+	 * Creates a simulation of the given number of vehicles, spread over the layout.
+	 *
+	 * @param numberOfVehicles number of vehicles
+	 * @param layout the road pieces in driving order, the last one connects to the first one
+	 */
+	public SimulatedTransport(int numberOfVehicles, RoadPiece... layout) {
+		if (layout.length == 0) {
+			throw new IllegalArgumentException("layout must not be empty");
+		}
+		RoadPiece[] pieces = layout.clone();
+		for (int i = 0; i < numberOfVehicles; i++) {
+			vehicles.add(new SimulatedVehicle(FIRST_MAC + i, pieces, i));
+		}
+	}
+
+	/**
+	 * Sets virtual seconds per wall clock second. Default is 1, i.e. real time.
+	 *
+	 * @param timeScale the time scale, {@link #MAX_SPEED} to simulate as fast as possible
+	 * @return this transport
+	 */
+	public SimulatedTransport setTimeScale(double timeScale) {
+		if (!(timeScale > 0)) {
+			throw new IllegalArgumentException("time scale must be positive");
+		}
+		this.timeScale = timeScale;
+		return this;
+	}
+
+	/**
+	 * Sets the virtual time vehicles are advanced per step. Default is 10 milliseconds.
+	 *
+	 * @param tick the virtual time per step
+	 * @return this transport
+	 */
+	public SimulatedTransport setTick(Duration tick) {
+		this.tickNanos = tick.toNanos();
+		return this;
+	}
+
+	@Override
+	public void start(Configuration configuration, TransportContext context) {
+		for (int i = 0; i < vehicles.size(); i++) {
+			SimulatedVehicle simulated = vehicles.get(i);
+			Model model = Model.values()[i % Model.values().length];
+			Vehicle vehicle = context.attach(simulated.getMac(), Optional.of(model), simulated);
+			synchronized (this) {
+				simulated.valueNotifications = bytes -> context.valueNotification(vehicle, bytes);
+				simulated.connectedNotifications = connected -> context.connectedNotification(vehicle, connected);
+			}
+			context.connectedNotification(vehicle, true);
+			context.valueNotification(vehicle, simulated.chargerInfo());
+			context.ready(vehicle);
+		}
+		Thread simulation = new Thread(this::run, "janki-simulation");
+		simulation.setDaemon(true);
+		thread = simulation;
+		simulation.start();
+	}
+
+	@Override
+	public void stop() {
+		Thread simulation = thread;
+		thread = null;
+		if (simulation != null) {
+			simulation.interrupt();
+		}
+	}
+
+	/**
+	 * Advances the virtual clock and steps all vehicles, in ticks. Called by the simulation thread,
+	 * may be called directly for deterministic tests if the transport is not started. Notifications
+	 * of vehicles not attached yet are dropped.
+	 *
+	 * @param duration the virtual time to advance
+	 */
+	public synchronized void advance(Duration duration) {
+		long tick = tickNanos;
+		for (long left = duration.toNanos(); left > 0; left -= tick) {
+			long step = Math.min(tick, left);
+			for (SimulatedVehicle vehicle : vehicles) {
+				vehicle.step(step);
+			}
+			virtualTime += step;
+		}
+	}
+
+	/**
+	 * Returns the virtual time since start.
+	 *
+	 * @return the virtual time
+	 */
+	public synchronized Duration getVirtualTime() {
+		return Duration.ofNanos(virtualTime);
+	}
+
+	/**
+	 * Returns the simulated vehicles, in order of their MAC addresses.
+	 *
+	 * @return the simulated vehicles
+	 */
+	public List<SimulatedVehicle> getVehicles() {
+		return Collections.unmodifiableList(vehicles);
+	}
+
+	private void run() {
+		long start = System.nanoTime();
+		long simulated = 0;
+		double lastScale = timeScale;
+		while (thread == Thread.currentThread()) {
+			long tick = tickNanos;
+			advance(Duration.ofNanos(tick));
+			simulated += tick;
+			double scale = timeScale;
+			if (scale != lastScale) { // pace from now on
+				lastScale = scale;
+				start = System.nanoTime();
+				simulated = 0;
+			}
+			if (scale != MAX_SPEED) {
+				long due = start + (long) (simulated / scale);
+				for (long wait = due - System.nanoTime(); wait > 0 && !Thread.interrupted(); wait = due - System.nanoTime()) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}
+	}
+
+}
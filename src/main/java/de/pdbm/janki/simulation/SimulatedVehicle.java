@@ -0,0 +1,271 @@
+package de.pdbm.janki.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import de.pdbm.janki.core.Link;
+import de.pdbm.janki.core.RoadPiece;
+
+/**
+ * Simulated vehicle driving along a layout of road pieces.
+ * <p>
+ *
+ * Reacts to speed, change lane, set offset from road center, ping and disconnect messages. Ping responses are emitted
+ * by the next {@link #step(long)}, so round trip times include a simulation tick. Emits a transition update
+ * followed by a position update whenever it enters the next road piece, with the byte layout of
+ * <a href="https://github.com/anki/drive-sdk/blob/master/include/ankidrive/protocol.h">protocol.h</a>.
+ * All corners are driven with ascending locations, i.e. as left corners.
+ * <p>
+ *
+ * Messages are written by the command queue thread, {@link #step(long)} is called by the simulation thread.
+ *
+ * @author bernd
+ *
+ */
+public class SimulatedVehicle implements Link {
+
+	private static final byte SET_SPEED = 0x24;
+	private static final byte CHANGE_LANE = 0x25;
+	private static final byte SET_OFFSET_FROM_ROAD_CENTER = 0x2c;
+	private static final byte DISCONNECT = 0x0d;
+	private static final byte PING = 0x16;
+
+	private static final byte POSITION_UPDATE = 0x27;
+	private static final byte TRANSITION_UPDATE = 0x29;
+	private static final byte CHARGER_INFO = 0x3f;
+	private static final byte PING_RESPONSE = 0x17;
+
+	private static final float MAX_OFFSET = 68.0f; // mm from road center to outermost lane
+	private static final float LANE_WIDTH = 9.0f;
+
+	private final long mac;
+	private final RoadPiece[] layout;
+
+	Consumer<byte[]> valueNotifications = bytes -> {}; // set by transport
+	Consumer<Boolean> connectedNotifications = connected -> {}; // set by transport
+
+	// commands, written by command queue thread
+	private volatile int desiredSpeed;
+	private volatile int acceleration = 10000;
+	private volatile float desiredOffset;
+	private volatile int horizontalSpeed = 1000;
+	private volatile boolean connected = true;
+	private final AtomicInteger pendingPings = new AtomicInteger();
+
+	// state, simulation thread only
+	private boolean reportedConnected = true;
+	private double speed; // mm/sec
+	private double offset; // mm from road center
+	private int piece;
+	private double distance; // mm driven on current piece
+	private long transitions;
+
+	/**
+	 * Creates a vehicle standing on a road piece of the layout.
+	 *
+	 * @param mac the MAC address as 48 bit value
+	 * @param layout the road pieces in driving order, the last one connects to the first one
+	 * @param piece index of the road piece to start on
+	 */
+	public SimulatedVehicle(long mac, RoadPiece[] layout, int piece) {
+		this.mac = mac;
+		this.layout = layout;
+		this.piece = piece % layout.length;
+	}
+
+	@Override
+	public boolean write(byte[] message) {
+		if (!connected) {
+			throw new IllegalStateException("simulated vehicle not connected");
+		}
+		switch (message[1]) {
+		case SET_SPEED:
+			acceleration = Math.max(1, getShort(message, 4));
+			desiredSpeed = getShort(message, 2);
+			break;
+		case CHANGE_LANE:
+			horizontalSpeed = Math.max(1, getShort(message, 2));
+			desiredOffset = clamp(getFloat(message, 6));
+			break;
+		case SET_OFFSET_FROM_ROAD_CENTER:
+			break; // calibration, the simulated vehicle knows its offset
+		case PING:
+			pendingPings.incrementAndGet();
+			break;
+		case DISCONNECT:
+			connected = false;
+			break;
+		default:
+			break; // e.g. sdk mode
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public void disconnect() {
+		connected = false;
+		desiredSpeed = 0; // a real vehicle stops when the connection is lost
+	}
+
+	@Override
+	public boolean reconnect() {
+		connected = true;
+		return true;
+	}
+
+	@Override
+	public void release() {
+		connected = false;
+		valueNotifications = bytes -> {};
+		connectedNotifications = connected -> {};
+	}
+
+	/**
+	 * Advances this vehicle by the given virtual time and emits notifications for the road pieces entered.
+	 *
+	 * @param nanos the virtual time
+	 */
+	void step(long nanos) {
+		if (connected != reportedConnected) {
+			reportedConnected = connected;
+			connectedNotifications.accept(reportedConnected);
+		}
+		if (!reportedConnected) {
+			speed = 0;
+			return;
+		}
+		for (int pings = pendingPings.getAndSet(0); pings > 0; pings--) {
+			valueNotifications.accept(new byte[] {1, PING_RESPONSE});
+		}
+		double seconds = nanos / 1e9;
+		double target = desiredSpeed;
+		double dv = acceleration * seconds;
+		speed = speed < target ? Math.min(target, speed + dv) : Math.max(target, speed - dv);
+		double dOffset = horizontalSpeed * seconds;
+		offset = offset < desiredOffset ? Math.min(desiredOffset, offset + dOffset) : Math.max(desiredOffset, offset - dOffset);
+		distance += speed * seconds;
+		double length;
+		while (distance >= (length = length(layout[piece]))) {
+			distance -= length;
+			int previous = piece;
+			piece = (piece + 1) % layout.length;
+			transitions++;
+			valueNotifications.accept(transitionUpdate(previous));
+			valueNotifications.accept(positionUpdate());
+		}
+	}
+
+	/**
+	 * Returns the charger info message of a vehicle not on charger with full battery.
+	 *
+	 * @return the charger info message
+	 */
+	byte[] chargerInfo() {
+		return new byte[] {5, CHARGER_INFO, 0, 0, 0, 1};
+	}
+
+	public long getMac() {
+		return mac;
+	}
+
+	/**
+	 * Returns the current speed. Only meaningful while the simulation is not stepping.
+	 *
+	 * @return speed in mm/sec
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Returns the number of road pieces entered so far. Only meaningful while the simulation is not stepping.
+	 *
+	 * @return number of transitions
+	 */
+	public long getTransitions() {
+		return transitions;
+	}
+
+	private byte[] positionUpdate() {
+		byte[] bytes = new byte[17];
+		bytes[0] = 16;
+		bytes[1] = POSITION_UPDATE;
+		bytes[2] = (byte) lane();
+		bytes[3] = (byte) layout[piece].getId();
+		putFloat(bytes, 4, (float) offset);
+		putShort(bytes, 8, (int) speed);
+		bytes[10] = 0; // parsing flags, 0x40 would be descending locations
+		putShort(bytes, 13, horizontalSpeed);
+		putShort(bytes, 15, desiredSpeed);
+		return bytes;
+	}
+
+	private byte[] transitionUpdate(int previous) {
+		byte[] bytes = new byte[19];
+		bytes[0] = 18;
+		bytes[1] = TRANSITION_UPDATE;
+		// bytes[2] and bytes[3], road piece indices, are always 0 in current firmware
+		putFloat(bytes, 4, (float) offset);
+		putShort(bytes, 11, horizontalSpeed);
+		putShort(bytes, 13, desiredSpeed);
+		bytes[17] = (byte) (length(layout[previous]) / 10);
+		bytes[18] = bytes[17];
+		return bytes;
+	}
+
+	private int lane() {
+		return Math.round((float) (offset + MAX_OFFSET) / LANE_WIDTH);
+	}
+
+	/**
+	 * Returns the length of the road piece in mm, in the middle of the road.
+	 */
+	private static double length(RoadPiece roadPiece) {
+		switch (roadPiece) {
+		case START:
+			return 340;
+		case FINISH:
+			return 220;
+		case CORNER:
+			return 440;
+		default:
+			return 560;
+		}
+	}
+
+	private static float clamp(float offset) {
+		return Math.max(-MAX_OFFSET, Math.min(MAX_OFFSET, offset));
+	}
+
+	private static int getShort(byte[] bytes, int index) {
+		return (short) ((bytes[index] & 0xFF) | (bytes[index + 1] & 0xFF) << 8);
+	}
+
+	private static float getFloat(byte[] bytes, int index) {
+		return Float.intBitsToFloat((bytes[index] & 0xFF) | (bytes[index + 1] & 0xFF) << 8 | (bytes[index + 2] & 0xFF) << 16 | (bytes[index + 3] & 0xFF) << 24);
+	}
+
+	private static void putShort(byte[] bytes, int index, int value) {
+		bytes[index] = (byte) value;
+		bytes[index + 1] = (byte) (value >> 8);
+	}
+
+	private static void putFloat(byte[] bytes, int index, float value) {
+		int bits = Float.floatToIntBits(value);
+		bytes[index] = (byte) bits;
+		bytes[index + 1] = (byte) (bits >> 8);
+		bytes[index + 2] = (byte) (bits >> 16);
+		bytes[index + 3] = (byte) (bits >> 24);
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+ * In-process simulation of vehicles driving on a virtual clock, to test and load-test without cars and Bluetooth adapter.
+ * 
+ * @author bernd
+ *
+ */
+package de.pdbm.janki.simulation;
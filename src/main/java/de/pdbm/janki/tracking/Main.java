@@ -3,6 +3,8 @@ package de.pdbm.janki.tracking;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import de.pdbm.janki.core.Configuration;
+import de.pdbm.janki.core.JAnki;
 import de.pdbm.janki.core.LogType;
 import de.pdbm.janki.core.Logger;
 
@@ -10,6 +12,7 @@ public class Main {
 
 	public static void main(String[] args) throws Exception {
 		Logger.switchLogTypeOn(LogType.values());
+		JAnki.start(new Configuration()).get();
 		List<CoordinatesRoadPieceTuple> tuples = CompletableFuture.supplyAsync(Tracking::gatherRoadPieces).get();
 		System.out.println("Tracking finished with:");
 		tuples.stream().forEach(System.out::print);
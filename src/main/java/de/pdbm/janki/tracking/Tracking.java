@@ -2,11 +2,14 @@ package de.pdbm.janki.tracking;
 
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.stream.Collectors;
 
+import de.pdbm.janki.core.JAnki;
 import de.pdbm.janki.core.RoadPiece;
 import de.pdbm.janki.core.Vehicle;
+import de.pdbm.janki.core.VehicleState;
 import de.pdbm.janki.core.notifications.PositionUpdate;
 import de.pdbm.janki.core.notifications.PositionUpdateListener;
 
@@ -58,25 +61,17 @@ public class Tracking {
 
 	
 	/**
-	 * Find one vehicle which is ready to start.
+	 * Find one vehicle which is ready to start. Waits for the first vehicle reaching state
+	 * {@link VehicleState#READY}, without polling.
 	 * 
 	 * @return vehicle which is ready to start
 	 */
 	private static Vehicle findVehicleReadyToStart() {
-		List<Vehicle> vehicles = Vehicle.getVehicles();
-		while (true) {
-			for (Vehicle vehicle : vehicles) {
-				if (vehicle.isReadyToStart()) {
-					System.out.println("Start Tracking with " + vehicle);
-					return vehicle;
-				}
-			}
-			try {
-				Thread.sleep(300);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
+		CompletableFuture<Vehicle> ready = new CompletableFuture<>();
+		JAnki.onVehicleReady(vehicle -> vehicle.whenState(VehicleState.READY).thenAccept(ready::complete));
+		Vehicle vehicle = ready.join();
+		System.out.println("Start Tracking with " + vehicle);
+		return vehicle;
 	}
 
 	/**
@@ -0,0 +1,44 @@
+package de.pdbm.janki.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.pdbm.janki.core.Vehicle.Model;
+
+public class CharacteristicCacheTest {
+
+	private static final String MAC = "E4:0A:2C:13:31:5F";
+	private static final String UUID = "BE15BEE1-6186-407E-8381-0BD89C4D8DF4";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void survivesRestart() throws IOException {
+		Path file = folder.getRoot().toPath().resolve(CharacteristicCache.CACHE_FILE_NAME);
+		CharacteristicCache cache = new CharacteristicCache(file);
+		cache.putPosition(MAC, UUID, 3, 1);
+		cache.putModel(MAC, Model.GROUNDSHOCK);
+
+		CharacteristicCache reloaded = new CharacteristicCache(file);
+		Assert.assertArrayEquals(new int[] {3, 1}, reloaded.position(MAC, UUID).get());
+		Assert.assertEquals(Model.GROUNDSHOCK, reloaded.model(MAC).get());
+	}
+
+	@Test
+	public void invalidate() throws IOException {
+		Path file = folder.getRoot().toPath().resolve(CharacteristicCache.CACHE_FILE_NAME);
+		CharacteristicCache cache = new CharacteristicCache(file);
+		cache.putPosition(MAC, UUID, 3, 1);
+		cache.putModel(MAC, Model.SKULL);
+		cache.invalidate(MAC);
+		Assert.assertFalse(cache.position(MAC, UUID).isPresent());
+		Assert.assertFalse(new CharacteristicCache(file).model(MAC).isPresent());
+	}
+
+}
@@ -0,0 +1,167 @@
+package de.pdbm.janki.core;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.CommandQueue.Kind;
+
+public class CommandQueueTest {
+
+	private final List<byte[]> written = new CopyOnWriteArrayList<>();
+	private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+	private final CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+
+	/*
+	 * Writer blocking on the first message, so following commands stay in the queue.
+	 */
+	private boolean write(byte[] message) {
+		if (written.isEmpty()) {
+			firstWriteStarted.countDown();
+			try {
+				releaseFirstWrite.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		written.add(message);
+		return true;
+	}
+
+	@Test
+	public void latestSpeedWins() throws Exception {
+		CommandQueue queue = new CommandQueue(this::write);
+		CompletableFuture<Void> first = queue.submit(Kind.SPEED, new byte[] {1});
+		Assert.assertTrue(firstWriteStarted.await(1, TimeUnit.SECONDS));
+		CompletableFuture<Void> second = queue.submit(Kind.SPEED, new byte[] {2});
+		CompletableFuture<Void> third = queue.submit(Kind.SPEED, new byte[] {3});
+		Assert.assertEquals("one pending command", 1, queue.getQueueDepth());
+		releaseFirstWrite.countDown();
+		CompletableFuture.allOf(first, second, third).get(1, TimeUnit.SECONDS);
+		Assert.assertEquals("second speed must be replaced", 2, written.size());
+		Assert.assertEquals(3, written.get(1)[0]);
+		Assert.assertEquals(1, queue.getCoalescedCommands());
+		Assert.assertEquals(2, queue.getWrittenMessages());
+	}
+
+	@Test
+	public void stopJumpsQueue() throws Exception {
+		CommandQueue queue = new CommandQueue(this::write);
+		queue.submit(Kind.OTHER, new byte[] {1});
+		Assert.assertTrue(firstWriteStarted.await(1, TimeUnit.SECONDS));
+		CompletableFuture<Void> lane = queue.submit(Kind.CHANGE_LANE, new byte[] {2}, new byte[] {3});
+		CompletableFuture<Void> speed = queue.submit(Kind.SPEED, new byte[] {4});
+		CompletableFuture<Void> stop = queue.submit(Kind.STOP, new byte[] {5});
+		releaseFirstWrite.countDown();
+		CompletableFuture.allOf(lane, speed, stop).get(1, TimeUnit.SECONDS);
+		Assert.assertEquals("pending speed must be superseded by stop", 4, written.size());
+		Assert.assertEquals(5, written.get(1)[0]);
+		Assert.assertEquals(2, written.get(2)[0]);
+		Assert.assertEquals(3, written.get(3)[0]);
+	}
+
+	@Test
+	public void failedWriteCompletesExceptionally() throws Exception {
+		CommandQueue queue = new CommandQueue(message -> false);
+		CompletableFuture<Void> future = queue.submit(Kind.SPEED, new byte[] {1});
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			Assert.fail("write must fail");
+		} catch (ExecutionException e) {
+			Assert.assertEquals(1, queue.getFailedMessages());
+		}
+	}
+
+	@Test
+	public void writesOnVirtualThreads() throws Exception {
+		List<Thread> writers = new CopyOnWriteArrayList<>();
+		CommandQueue queue = new CommandQueue(message -> writers.add(Thread.currentThread()), CommandQueue.executor(true));
+		queue.submit(Kind.SPEED, new byte[] {1}).get(1, TimeUnit.SECONDS);
+		Assert.assertTrue(writers.get(0).isVirtual());
+		Assert.assertEquals("janki-writer", writers.get(0).getName());
+		Assert.assertFalse(Threads.factory("janki-writer", false).newThread(() -> {}).isVirtual());
+	}
+
+	@Test
+	public void stopBypassesThrottle() throws Exception {
+		CountDownLatch budget = new CountDownLatch(1);
+		CommandQueue queue = new CommandQueue(written::add, CommandQueue.executor(false), throttle(() -> budget.await()));
+		CompletableFuture<Void> stop = queue.submit(Kind.STOP, new byte[] {1});
+		CompletableFuture<Void> ping = queue.submit(Kind.PING, new byte[] {2});
+		CompletableFuture.allOf(stop, ping).get(1, TimeUnit.SECONDS);
+		CompletableFuture<Void> speed = queue.submit(Kind.SPEED, new byte[] {3});
+		Thread.sleep(50);
+		Assert.assertFalse("speed must wait for the budget", speed.isDone());
+		budget.countDown();
+		speed.get(1, TimeUnit.SECONDS);
+		Assert.assertEquals(3, written.size());
+	}
+
+	@Test
+	public void writeLatencyExcludesThrottle() throws Exception {
+		CommandQueue queue = new CommandQueue(written::add, CommandQueue.executor(false), throttle(() -> Thread.sleep(50)));
+		queue.submit(Kind.SPEED, new byte[] {1}).get(1, TimeUnit.SECONDS);
+		Assert.assertTrue("latency " + queue.getMaxWriteLatency(), queue.getMaxWriteLatency() < TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void stopCancelsThrottledSpeed() throws Exception {
+		WriteScheduler scheduler = new WriteScheduler(1, 1);
+		Vehicle vehicle = new Vehicle(0x0A0000000004L, Optional.empty(), null);
+		CommandQueue queue = new CommandQueue(written::add, CommandQueue.executor(false), new CommandQueue.Throttle() {
+
+			@Override
+			public boolean acquire(BooleanSupplier cancelled) throws InterruptedException {
+				return scheduler.acquire(vehicle, cancelled);
+			}
+
+			@Override
+			public void wakeUp() {
+				scheduler.wakeUp();
+			}
+		});
+		queue.submit(Kind.SPEED, new byte[] {1}).get(1, TimeUnit.SECONDS); // takes the only token
+		CompletableFuture<Void> speed = queue.submit(Kind.SPEED, new byte[] {2});
+		Thread.sleep(50); // speed waits for the next token
+		CompletableFuture<Void> stop = queue.submit(Kind.STOP, new byte[] {3});
+		stop.get(200, TimeUnit.MILLISECONDS);
+		speed.get(200, TimeUnit.MILLISECONDS);
+		Thread.sleep(50);
+		Assert.assertEquals("throttled speed must be superseded by stop", List.of((byte) 1, (byte) 3),
+				written.stream().map(message -> message[0]).collect(Collectors.toList()));
+		Assert.assertEquals(1, queue.getCoalescedCommands());
+	}
+
+	/*
+	 * Throttle waiting by the given action, not cancellable.
+	 */
+	private static CommandQueue.Throttle throttle(Wait wait) {
+		return new CommandQueue.Throttle() {
+
+			@Override
+			public boolean acquire(BooleanSupplier cancelled) throws InterruptedException {
+				wait.await();
+				return true;
+			}
+
+			@Override
+			public void wakeUp() {
+			}
+		};
+	}
+
+	private interface Wait {
+
+		void await() throws InterruptedException;
+	}
+
+}
@@ -0,0 +1,108 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.simulation.SimulatedTransport;
+import de.pdbm.janki.simulation.SimulatedVehicle;
+
+public class ControlLoopTest {
+
+	private static final byte[] POSITION_UPDATE = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	@Test
+	public void ticksWithLatestStateAndWritesCommands() throws InterruptedException {
+		SimulatedVehicle link = new SimulatedVehicle(0x0C0000000001L, SimulatedTransport.OVAL, 0);
+		Vehicle vehicle = new Vehicle(0x0C0000000001L, Optional.empty(), link);
+		vehicle.onConnectedNotification(true);
+		CountDownLatch ticks = new CountDownLatch(5);
+		AtomicReference<PositionUpdate> seen = new AtomicReference<>();
+		ControlLoop loop = ControlLoop.start(vehicle, Duration.ofMillis(10), tick -> {
+			seen.set(tick.getPositionUpdate());
+			tick.setSpeed(tick.getPositionUpdate() == null ? 300 : 600);
+			ticks.countDown();
+		});
+		try {
+			vehicle.dispatchValueNotification(POSITION_UPDATE);
+			Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+		} finally {
+			loop.stop();
+		}
+		Assert.assertTrue(loop.isStopped());
+		Assert.assertNotNull(seen.get());
+		Assert.assertEquals(600, vehicle.getSpeed());
+		Assert.assertTrue(loop.getTicks() >= 5);
+		Assert.assertTrue(loop.getMaxJitter() >= 0);
+		Assert.assertTrue(vehicle.metrics.getControlTicks() >= loop.getTicks());
+	}
+
+	@Test
+	public void countsOverruns() throws InterruptedException {
+		Vehicle vehicle = new Vehicle(0x0C0000000002L, Optional.empty(), null);
+		CountDownLatch ticks = new CountDownLatch(3);
+		ControlLoop loop = ControlLoop.start(vehicle, Duration.ofMillis(5), tick -> {
+			try {
+				Thread.sleep(20); // four periods
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ticks.countDown();
+		});
+		try {
+			Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+		} finally {
+			loop.stop();
+		}
+		Assert.assertTrue(loop.getOverruns() >= 2);
+		Assert.assertEquals(loop.getOverruns(), vehicle.metrics.getControlOverruns());
+	}
+
+	@Test
+	public void evictionAndShutdownStopLoops() {
+		Vehicle vehicle = new Vehicle(0x0C0000000003L, Optional.empty(), null);
+		Vehicle.registry.add(vehicle);
+		ControlLoop evicted = ControlLoop.start(vehicle, Duration.ofMillis(10), tick -> {});
+		Assert.assertTrue(JAnki.evict(vehicle));
+		Assert.assertTrue(evicted.isStopped());
+
+		ControlLoop running = ControlLoop.start(vehicle, Duration.ofMillis(10), tick -> tick.setSpeed(500));
+		JAnki.shutdown(Duration.ofMillis(100));
+		Assert.assertTrue(running.isStopped());
+	}
+
+	@Test
+	public void stopAllWaitsForRunningTickAndIgnoresItsCommands() throws InterruptedException {
+		SimulatedVehicle link = new SimulatedVehicle(0x0C0000000004L, SimulatedTransport.OVAL, 0);
+		Vehicle vehicle = new Vehicle(0x0C0000000004L, Optional.empty(), link);
+		vehicle.onConnectedNotification(true);
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ControlLoop loop = ControlLoop.start(vehicle, Duration.ofMillis(10), tick -> {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			tick.setSpeed(500);
+		});
+		Assert.assertTrue(entered.await(1, TimeUnit.SECONDS));
+		Thread stopper = new Thread(() -> ControlLoop.stopAll(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+		stopper.start();
+		stopper.join(100);
+		Assert.assertTrue("must wait for the running tick", stopper.isAlive());
+		Assert.assertTrue(loop.isStopped());
+		release.countDown();
+		stopper.join(1000);
+		Assert.assertFalse(stopper.isAlive());
+		Assert.assertEquals("stopped loop must not set a speed", 0, vehicle.getSpeed());
+	}
+
+}
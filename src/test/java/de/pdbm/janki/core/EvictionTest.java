@@ -0,0 +1,50 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.simulation.SimulatedTransport;
+import de.pdbm.janki.simulation.SimulatedVehicle;
+
+public class EvictionTest {
+
+	private static final byte[] POSITION_UPDATE = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	@Test
+	public void evictRemovesVehicleAndReleasesLink() {
+		long mac = 0x0D0000000001L;
+		SimulatedVehicle link = new SimulatedVehicle(mac, SimulatedTransport.OVAL, 0);
+		Vehicle vehicle = new Vehicle(mac, Optional.empty(), link);
+		Vehicle.registry.add(vehicle);
+		List<Object> calls = new CopyOnWriteArrayList<>();
+		vehicle.addNotificationListener((PositionUpdateListener) calls::add);
+		JAnki.onVehicleEvicted(calls::add);
+
+		Assert.assertTrue(JAnki.evict(vehicle));
+
+		Assert.assertEquals(List.of(vehicle), calls);
+		Assert.assertFalse(Vehicle.find(mac).isPresent());
+		Assert.assertFalse(link.isConnected());
+		vehicle.dispatchValueNotification(POSITION_UPDATE);
+		Assert.assertEquals("listeners must be removed", 1, calls.size());
+		Assert.assertFalse("evicted twice", JAnki.evict(vehicle));
+	}
+
+	@Test
+	public void notSeenForEvictsDisconnectedVehiclesOnly() {
+		EvictionPolicy policy = EvictionPolicy.notSeenFor(Duration.ofSeconds(100));
+		Vehicle vehicle = new Vehicle(0x0D0000000002L, Optional.empty(), new SimulatedVehicle(0x0D0000000002L, SimulatedTransport.OVAL, 0));
+		Assert.assertFalse(policy.isStale(vehicle, Duration.ofSeconds(99)));
+		Assert.assertTrue(policy.isStale(vehicle, Duration.ofSeconds(100)));
+		vehicle.onConnectedNotification(true);
+		Assert.assertFalse(policy.isStale(vehicle, Duration.ofSeconds(1000)));
+		Assert.assertFalse(EvictionPolicy.NEVER.isStale(vehicle, Duration.ofDays(1)));
+	}
+
+}
@@ -0,0 +1,46 @@
+package de.pdbm.janki.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsContainTheirValues() {
+		for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, 1L << 39}) {
+			int index = LatencyHistogram.index(value);
+			Assert.assertTrue("upper bound of " + value, LatencyHistogram.upperBound(index) >= value);
+			Assert.assertTrue("relative error of " + value, LatencyHistogram.upperBound(index) <= value + value / 8);
+		}
+		Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000);
+		}
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(50_500, histogram.getMean());
+		Assert.assertEquals(100_000, histogram.getMax());
+		long p50 = histogram.getPercentile(50);
+		long p99 = histogram.getPercentile(99);
+		Assert.assertTrue(p50 >= 50_000 && p50 <= 50_000 * 9 / 8);
+		Assert.assertTrue(p99 >= 99_000 && p99 <= 99_000 * 9 / 8);
+	}
+
+	@Test
+	public void aggregatesHistograms() {
+		LatencyHistogram h1 = new LatencyHistogram();
+		LatencyHistogram h2 = new LatencyHistogram();
+		h1.record(10);
+		h2.record(1_000_000);
+		long[] buckets = new long[LatencyHistogram.BUCKETS];
+		h1.addTo(buckets);
+		h2.addTo(buckets);
+		Assert.assertTrue(LatencyHistogram.percentile(buckets, 100) >= 1_000_000);
+		Assert.assertEquals(0, new LatencyHistogram().getPercentile(99));
+	}
+
+}
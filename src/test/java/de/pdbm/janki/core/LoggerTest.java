@@ -19,10 +19,19 @@ public class LoggerTest {
 		Path path = Paths.get(Logger.LOG_FILE_NAME);
 		long numberOfLines1= Files.lines(path).count();
 		Logger.log(LogType.DEVICE_DISCOVERY, "write some text");
+		Logger.flush();
 		long numberOfLines2= Files.lines(path).count();
 		Assert.assertSame("must be same number of lines", numberOfLines1, numberOfLines2);
 		Logger.log(LogType.DEVICE_INITIALIZATION, "write some text");
+		Logger.flush();
 		long numberOfLines3= Files.lines(path).count();
 		Assert.assertSame("must be one more line", numberOfLines2 + 1, numberOfLines3);
 	}
+
+	@Test
+	public void format() {
+		Assert.assertEquals("a 1 b [2, 3] c", Logger.format("a {} b {} c", 1, new byte[] {2, 3}));
+		Assert.assertEquals("no args {}", Logger.format("no args {}"));
+		Assert.assertEquals("a 1", Logger.format("a {}", 1, 2));
+	}
 }
@@ -0,0 +1,20 @@
+package de.pdbm.janki.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MacAddressTest {
+
+	@Test
+	public void roundTrip() {
+		long mac = MacAddress.toLong("e4:0a:2c:13:31:5f");
+		Assert.assertEquals(0xE40A2C13315FL, mac);
+		Assert.assertEquals("E4:0A:2C:13:31:5F", MacAddress.toString(mac));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void malformed() {
+		MacAddress.toLong("E4-0A-2C-13-31-5F");
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.pdbm.janki.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+	private final ExecutorService worker = Executors.newSingleThreadExecutor();
+	private final List<Byte> dispatched = new CopyOnWriteArrayList<>();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void shutdown() {
+		worker.shutdownNow();
+	}
+
+	/*
+	 * Consumer blocking on the first notification, so following notifications stay in the buffer.
+	 */
+	private void consume(byte[] bytes) {
+		started.countDown();
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		dispatched.add(bytes[0]);
+	}
+
+	@Test
+	public void dropOldest() throws Exception {
+		NotificationDispatcher.Buffer buffer = new NotificationDispatcher.Buffer(2, OverflowPolicy.DROP_OLDEST, worker, this::consume);
+		buffer.offer(new byte[] {1});
+		Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		for (byte b = 2; b <= 5; b++) {
+			buffer.offer(new byte[] {b});
+		}
+		release.countDown();
+		awaitEmpty(buffer);
+		// 1 is taken by the worker, 2 and 3 are dropped, 4 and 5 stay in order
+		Assert.assertEquals(List.of((byte) 1, (byte) 4, (byte) 5), dispatched);
+		Assert.assertEquals(2, buffer.getDropped());
+	}
+
+	@Test
+	public void dropNewest() throws Exception {
+		NotificationDispatcher.Buffer buffer = new NotificationDispatcher.Buffer(2, OverflowPolicy.DROP_NEWEST, worker, this::consume);
+		buffer.offer(new byte[] {1});
+		Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		for (byte b = 2; b <= 5; b++) {
+			buffer.offer(new byte[] {b});
+		}
+		release.countDown();
+		awaitEmpty(buffer);
+		// 1 is taken by the worker, 2 and 3 are buffered, 4 and 5 are dropped
+		Assert.assertEquals(List.of((byte) 1, (byte) 2, (byte) 3), dispatched);
+		Assert.assertEquals(2, buffer.getDropped());
+	}
+
+	@Test
+	public void keepsDrainingAfterError() throws Exception {
+		NotificationDispatcher.Buffer buffer = new NotificationDispatcher.Buffer(4, OverflowPolicy.DROP_NEWEST, worker, bytes -> {
+			if (bytes[0] == 1) {
+				throw new AssertionError("listener failed");
+			}
+			dispatched.add(bytes[0]);
+		});
+		for (byte b = 1; b <= 4; b++) {
+			buffer.offer(new byte[] {b});
+		}
+		awaitEmpty(buffer);
+		Assert.assertEquals(List.of((byte) 2, (byte) 3, (byte) 4), dispatched);
+	}
+
+	private void awaitEmpty(NotificationDispatcher.Buffer buffer) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while ((buffer.getSize() > 0 || dispatched.size() < 3) && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package de.pdbm.janki.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+public class NotificationListenersTest {
+
+	@Test
+	public void dispatchToInterestedListenersOnly() {
+		AtomicInteger positionUpdates = new AtomicInteger();
+		AtomicInteger transitionUpdates = new AtomicInteger();
+		NotificationListeners listeners = new NotificationListeners();
+		PositionUpdateListener positionUpdateListener = pu -> positionUpdates.incrementAndGet();
+		listeners.add(positionUpdateListener);
+		listeners.add((TransitionUpdateListener) tu -> transitionUpdates.incrementAndGet());
+
+		listeners.firePositionUpdate(new PositionUpdate(null, 1, RoadPiece.STRAIGHT, true));
+		Assert.assertEquals(1, positionUpdates.get());
+		Assert.assertEquals(0, transitionUpdates.get());
+
+		listeners.remove(positionUpdateListener);
+		listeners.firePositionUpdate(new PositionUpdate(null, 2, RoadPiece.STRAIGHT, true));
+		Assert.assertEquals("removed listener must not be called", 1, positionUpdates.get());
+		Assert.assertEquals(1, listeners.all().size());
+	}
+
+	@Test
+	public void weakListenerIsPurgedAfterCollection() {
+		AtomicInteger positionUpdates = new AtomicInteger();
+		NotificationListeners listeners = new NotificationListeners();
+		PositionUpdateListener listener = pu -> positionUpdates.incrementAndGet();
+		listeners.addWeak(listener);
+		listeners.add((TransitionUpdateListener) tu -> {});
+
+		listeners.firePositionUpdate(new PositionUpdate(null, 1, RoadPiece.STRAIGHT, true));
+		Assert.assertEquals(1, positionUpdates.get());
+
+		((NotificationListeners.WeakListener) listeners.all().get(0)).target.clear(); // as if collected
+		listeners.firePositionUpdate(new PositionUpdate(null, 2, RoadPiece.STRAIGHT, true));
+		Assert.assertEquals(1, positionUpdates.get());
+		listeners.purge();
+		Assert.assertEquals(1, listeners.all().size());
+	}
+
+	@Test
+	public void removeWeakListener() {
+		NotificationListeners listeners = new NotificationListeners();
+		PositionUpdateListener listener = pu -> Assert.fail();
+		listeners.addWeak(listener);
+		listeners.remove(listener);
+		Assert.assertTrue(listeners.all().isEmpty());
+		listeners.firePositionUpdate(new PositionUpdate(null, 1, RoadPiece.STRAIGHT, true));
+	}
+
+}
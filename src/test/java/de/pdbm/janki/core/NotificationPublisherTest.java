@@ -0,0 +1,129 @@
+package de.pdbm.janki.core;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.notifications.ChargerInfoNotification;
+import de.pdbm.janki.core.notifications.ConnectedNotification;
+
+public class NotificationPublisherTest {
+
+	private final Vehicle vehicle = new Vehicle(0x0D0000000001L, Optional.empty(), null);
+
+	@Test
+	public void honorsDemandAndDropsOldest() throws InterruptedException {
+		NotificationPublisher<ConnectedNotification> publisher = new NotificationPublisher<>(2, OverflowPolicy.DROP_OLDEST, new LongAdder());
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		Flow.Subscription subscription = subscriber.subscription.poll(5, TimeUnit.SECONDS);
+		ConnectedNotification first = new ConnectedNotification(vehicle, true);
+		ConnectedNotification second = new ConnectedNotification(vehicle, false);
+		ConnectedNotification third = new ConnectedNotification(vehicle, true);
+		publisher.submit(first);
+		publisher.submit(second);
+		publisher.submit(third);
+		Thread.sleep(50);
+		Assert.assertTrue(subscriber.items.isEmpty()); // no demand yet
+
+		subscription.request(10);
+		publisher.close();
+
+		Assert.assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(List.of(second, third), subscriber.items);
+	}
+
+	@Test
+	public void dropsNewestAndCounts() throws InterruptedException {
+		LongAdder dropped = new LongAdder();
+		NotificationPublisher<ConnectedNotification> publisher = new NotificationPublisher<>(1, OverflowPolicy.DROP_NEWEST, dropped);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		Flow.Subscription subscription = subscriber.subscription.poll(5, TimeUnit.SECONDS);
+		ConnectedNotification first = new ConnectedNotification(vehicle, true);
+		publisher.submit(first);
+		publisher.submit(new ConnectedNotification(vehicle, false));
+
+		subscription.request(1);
+		publisher.close();
+
+		Assert.assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(List.of(first), subscriber.items);
+		Assert.assertEquals(1, dropped.sum());
+		Assert.assertFalse(publisher.hasSubscribers());
+	}
+
+	@Test
+	public void vehiclePublishesNotifications() throws InterruptedException {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		Flow.Publisher<ChargerInfoNotification> publisher = vehicle.publisher(ChargerInfoNotification.class);
+		publisher.subscribe(new Flow.Subscriber<ChargerInfoNotification>() {
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscriber.onSubscribe(subscription);
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(ChargerInfoNotification item) {
+				subscriber.onNext(item);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				subscriber.onError(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				subscriber.onComplete();
+			}
+		});
+		subscriber.subscription.poll(5, TimeUnit.SECONDS);
+
+		vehicle.dispatchValueNotification(new byte[] {5, 0x3f, 0, 1, 0, 0});
+		vehicle.release();
+
+		Assert.assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, subscriber.items.size());
+		Assert.assertTrue(((ChargerInfoNotification) subscriber.items.get(0)).isOnCharger());
+	}
+
+	private static final class RecordingSubscriber implements Flow.Subscriber<Object> {
+
+		private final BlockingQueue<Flow.Subscription> subscription = new LinkedBlockingQueue<>();
+		private final List<Object> items = new CopyOnWriteArrayList<>();
+		private final CountDownLatch completed = new CountDownLatch(1);
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription.add(subscription);
+		}
+
+		@Override
+		public void onNext(Object item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			throwable.printStackTrace();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.simulation.SimulatedTransport;
+import de.pdbm.janki.simulation.SimulatedVehicle;
+
+public class ReconnectManagerTest {
+
+	@Test
+	public void reconnectsAndRestoresState() throws Exception {
+		long mac = 0x0C0000000001L;
+		SimulatedVehicle link = new SimulatedVehicle(mac, SimulatedTransport.OVAL, 0);
+		Vehicle vehicle = new Vehicle(mac, Optional.empty(), link);
+		Vehicle.registry.add(vehicle);
+		CompletableFuture<Duration> recovered = new CompletableFuture<>();
+		ReconnectManager manager = new ReconnectManager(new Configuration(), (v, duration) -> recovered.complete(duration));
+		try {
+			vehicle.setSpeed(500);
+			vehicle.changeLane(-68.0f).get(1, TimeUnit.SECONDS);
+			long written = vehicle.getCommandQueue().getWrittenMessages();
+
+			link.disconnect(); // connection lost, not requested
+			manager.onDisconnected(vehicle);
+
+			Duration timeToRecover = recovered.get(5, TimeUnit.SECONDS);
+			Assert.assertTrue(link.isConnected());
+			Assert.assertFalse(manager.isRecovering(vehicle));
+			Assert.assertTrue(timeToRecover.toNanos() > 0);
+			Assert.assertEquals("sdk mode, offset, change lane and speed", written + 4, vehicle.getCommandQueue().getWrittenMessages());
+			Assert.assertEquals(1, vehicle.metrics.getRecoveries());
+		} finally {
+			manager.stop();
+			Vehicle.registry.remove(vehicle);
+		}
+	}
+
+	@Test
+	public void doesNotReconnectRequestedDisconnect() throws Exception {
+		long mac = 0x0C0000000002L;
+		SimulatedVehicle link = new SimulatedVehicle(mac, SimulatedTransport.OVAL, 0);
+		Vehicle vehicle = new Vehicle(mac, Optional.empty(), link);
+		Vehicle.registry.add(vehicle);
+		ReconnectManager manager = new ReconnectManager(new Configuration(), (v, duration) -> Assert.fail());
+		try {
+			vehicle.disconnect().get(1, TimeUnit.SECONDS);
+			manager.onDisconnected(vehicle);
+			Thread.sleep(100);
+			Assert.assertFalse(link.isConnected());
+			Assert.assertFalse(manager.isRecovering(vehicle));
+		} finally {
+			manager.stop();
+			Vehicle.registry.remove(vehicle);
+		}
+	}
+
+	@Test
+	public void backoffIsJitteredAndBounded() {
+		Configuration configuration = new Configuration().setReconnectInitialBackoff(Duration.ofMillis(100)).setReconnectMaxBackoff(Duration.ofSeconds(1));
+		ReconnectManager manager = new ReconnectManager(configuration, (v, duration) -> {});
+		try {
+			for (int i = 0; i < 100; i++) {
+				long first = manager.backoff(1);
+				Assert.assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(50) && first <= TimeUnit.MILLISECONDS.toNanos(100));
+				long third = manager.backoff(3);
+				Assert.assertTrue(third >= TimeUnit.MILLISECONDS.toNanos(200) && third <= TimeUnit.MILLISECONDS.toNanos(400));
+				long late = manager.backoff(100);
+				Assert.assertTrue(late >= TimeUnit.MILLISECONDS.toNanos(500) && late <= TimeUnit.SECONDS.toNanos(1));
+			}
+		} finally {
+			manager.stop();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.pdbm.janki.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.journal.JournalRecord;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+
+public class ReplayTest {
+
+	private static final byte[] POSITION_UPDATE = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	@Test
+	public void dispatchesToListenersOfDetachedVehicle() throws InterruptedException {
+		long mac = 0x0A0000000001L;
+		Replay replay = new Replay(Arrays.asList(new JournalRecord(0, mac, POSITION_UPDATE), new JournalRecord(1, mac, POSITION_UPDATE)))
+				.setSpeed(Replay.MAX_SPEED);
+		List<PositionUpdate> updates = new ArrayList<>();
+		Vehicle vehicle = replay.vehicle(mac);
+		vehicle.addNotificationListener((PositionUpdateListener) updates::add);
+
+		Replay.Result result = replay.run();
+
+		Assert.assertEquals(2, result.getNotifications());
+		Assert.assertEquals(2, updates.size());
+		Assert.assertSame(vehicle, updates.get(0).getVehicle());
+		Assert.assertEquals(RoadPiece.STRAIGHT, updates.get(0).getRoadPiece());
+		Assert.assertFalse("created vehicle must be evicted", Vehicle.find(mac).isPresent());
+		Assert.assertTrue(vehicle.isDetached());
+		Assert.assertTrue(vehicle.isReadyToStart());
+	}
+
+	@Test
+	public void respectsSpeedFactor() throws InterruptedException {
+		long mac = 0x0A0000000002L;
+		long step = TimeUnit.MILLISECONDS.toNanos(100);
+		List<JournalRecord> records = Arrays.asList(new JournalRecord(5 * step, mac, POSITION_UPDATE),
+				new JournalRecord(6 * step, mac, POSITION_UPDATE), new JournalRecord(7 * step, mac, POSITION_UPDATE));
+
+		Replay.Result result = new Replay(records).setSpeed(10).run();
+
+		Assert.assertTrue("must take 20 ms at 10x speed", result.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+		Assert.assertTrue("must not take original time", result.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(200));
+	}
+
+	@Test
+	public void restartsTimingAtRunBoundary() throws InterruptedException {
+		long mac = 0x0A0000000003L;
+		long step = TimeUnit.MILLISECONDS.toNanos(10);
+		List<JournalRecord> records = Arrays.asList(new JournalRecord(1, TimeUnit.HOURS.toNanos(5), mac, POSITION_UPDATE),
+				new JournalRecord(1, TimeUnit.HOURS.toNanos(5) + step, mac, POSITION_UPDATE),
+				new JournalRecord(2, 0, mac, POSITION_UPDATE), new JournalRecord(2, step, mac, POSITION_UPDATE));
+
+		Replay.Result result = new Replay(records).run();
+
+		Assert.assertEquals(4, result.getNotifications());
+		Assert.assertTrue("must wait within runs", result.getElapsedNanos() >= 2 * step);
+		Assert.assertTrue("must not wait across runs", result.getElapsedNanos() < TimeUnit.SECONDS.toNanos(1));
+	}
+
+}
@@ -46,4 +46,11 @@ public class RoadPieceTest {
 		RoadPiece.valueOf(0);
 	}
 
+	@Test
+	public void unknownWithoutException() {
+		Assert.assertNull(RoadPiece.forId(0));
+		Assert.assertNull(RoadPiece.forId(-1));
+		Assert.assertSame(RoadPiece.CORNER, RoadPiece.forId(17));
+	}
+
 }
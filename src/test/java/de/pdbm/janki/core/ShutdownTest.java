@@ -0,0 +1,128 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.simulation.SimulatedTransport;
+import de.pdbm.janki.simulation.SimulatedVehicle;
+
+public class ShutdownTest {
+
+	@Test
+	public void stopsAndDisconnectsWithinDeadline() {
+		SimulatedVehicle healthyLink = new SimulatedVehicle(0x0E0000000001L, SimulatedTransport.OVAL, 0);
+		Vehicle healthy = new Vehicle(0x0E0000000001L, Optional.empty(), healthyLink);
+		healthy.onConnectedNotification(true);
+		CountDownLatch never = new CountDownLatch(1);
+		HangingLink hangingLink = new HangingLink(never);
+		Vehicle hanging = new Vehicle(0x0E0000000002L, Optional.empty(), hangingLink);
+		hanging.onConnectedNotification(true);
+		Vehicle.registry.add(healthy);
+		Vehicle.registry.add(hanging);
+		try {
+			healthy.setSpeed(500);
+
+			ShutdownReport report = JAnki.shutdown(Duration.ofMillis(300));
+
+			Assert.assertTrue(report.getElapsed().toMillis() < 2000);
+			Assert.assertFalse(report.isComplete());
+			Assert.assertTrue(report.getDisconnected().contains(healthy));
+			Assert.assertTrue(report.getFailures().get(hanging) instanceof TimeoutException);
+			Assert.assertEquals(0, healthy.getSpeed());
+			Assert.assertFalse(healthyLink.isConnected());
+			Assert.assertTrue(hangingLink.disconnected);
+		} finally {
+			never.countDown();
+			Vehicle.registry.remove(healthy);
+			Vehicle.registry.remove(hanging);
+		}
+	}
+
+	@Test
+	public void hangingDeviceDisconnectDoesNotBlock() {
+		CountDownLatch never = new CountDownLatch(1);
+		HangingLink hangingLink = new HangingLink(never, true);
+		Vehicle hanging = new Vehicle(0x0E0000000003L, Optional.empty(), hangingLink);
+		hanging.onConnectedNotification(true);
+		Vehicle.registry.add(hanging);
+		try {
+			ShutdownReport report = JAnki.shutdown(Duration.ofMillis(300));
+
+			Assert.assertTrue(report.getElapsed().toMillis() < 1000);
+			Throwable failure = report.getFailures().get(hanging);
+			Assert.assertTrue(failure instanceof TimeoutException);
+			Assert.assertEquals("device disconnect not finished before deadline", failure.getMessage());
+		} finally {
+			never.countDown();
+			Vehicle.registry.remove(hanging);
+		}
+	}
+
+	/*
+	 * Link whose writes, and optionally disconnects, hang until released.
+	 */
+	private static final class HangingLink implements Link {
+
+		private final CountDownLatch release;
+
+		private final boolean hangingDisconnect;
+
+		private volatile boolean disconnected;
+
+		private HangingLink(CountDownLatch release) {
+			this(release, false);
+		}
+
+		private HangingLink(CountDownLatch release, boolean hangingDisconnect) {
+			this.release = release;
+			this.hangingDisconnect = hangingDisconnect;
+		}
+
+		@Override
+		public boolean write(byte[] message) {
+			await();
+			return true;
+		}
+
+		private void await() {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void disconnect() {
+			disconnected = true;
+			if (hangingDisconnect) {
+				await();
+			}
+		}
+
+		@Override
+		public boolean reconnect() {
+			return true;
+		}
+
+		@Override
+		public void release() {
+		}
+	}
+
+}
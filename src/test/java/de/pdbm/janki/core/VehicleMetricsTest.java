@@ -0,0 +1,109 @@
+package de.pdbm.janki.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.notifications.NotificationHandler;
+import de.pdbm.janki.core.notifications.PositionUpdateListener;
+import de.pdbm.janki.core.notifications.TransitionUpdateListener;
+
+public class VehicleMetricsTest {
+
+	private static final byte[] POSITION_UPDATE = new byte[] {16, 0x27, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	private static final byte[] CHARGER_INFO = new byte[] {5, 0x3f, 0, 0, 0, 1};
+
+	@Test
+	public void countsNotificationsAndExposesMBeans() throws Exception {
+		Vehicle vehicle = new Vehicle(0x0B0000000001L, Optional.empty(), null);
+		vehicle.addNotificationListener((PositionUpdateListener) update -> {});
+		vehicle.addNotificationListener((TransitionUpdateListener) update -> {});
+		Vehicle.registry.add(vehicle);
+		try {
+			vehicle.dispatchValueNotification(POSITION_UPDATE);
+			vehicle.dispatchValueNotification(POSITION_UPDATE);
+			vehicle.dispatchValueNotification(CHARGER_INFO);
+			vehicle.dispatchValueNotification(new byte[] {2, 0x29, 1}); // transition update with changed firmware
+			vehicle.onConnectedNotification(false);
+			vehicle.onConnectedNotification(true);
+
+			Assert.assertEquals(2, vehicle.metrics.getPositionUpdates());
+			Assert.assertEquals(1, vehicle.metrics.getChargerInfoNotifications());
+			Assert.assertEquals(1, vehicle.metrics.getParseErrors());
+			Assert.assertEquals(1, vehicle.metrics.getDisconnects());
+			Assert.assertTrue(vehicle.metrics.getListenerTimeMax() > 0);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("de.pdbm.janki:type=Vehicle,name=" + ObjectName.quote(vehicle.getMacAddress()));
+			Assert.assertEquals(2L, server.getAttribute(name, "PositionUpdates"));
+			Assert.assertEquals(Boolean.TRUE, server.getAttribute(name, "Connected"));
+			long notifications = (Long) server.getAttribute(new ObjectName(FleetMetrics.OBJECT_NAME), "Notifications");
+			Assert.assertTrue(notifications >= 4);
+		} finally {
+			Vehicle.registry.remove(vehicle);
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer()
+				.isRegistered(new ObjectName("de.pdbm.janki:type=Vehicle,name=" + ObjectName.quote(vehicle.getMacAddress()))));
+	}
+
+	@Test
+	public void skipsUnobservedMessages() {
+		Vehicle vehicle = new Vehicle(0x0B0000000003L, Optional.empty(), null);
+		vehicle.dispatchValueNotification(POSITION_UPDATE);
+		vehicle.dispatchValueNotification(new byte[] {3, 0x4D, 0, 0});
+		vehicle.dispatchValueNotification(new byte[] {5, 0x3f, 0, 1, 0, 0}); // observed by vehicle itself
+		Assert.assertEquals(2, vehicle.metrics.getSkippedNotifications());
+		Assert.assertEquals(1, vehicle.metrics.getPositionUpdates());
+		Assert.assertEquals(1, vehicle.metrics.getOtherNotifications());
+		Assert.assertTrue(vehicle.isOnCharger());
+
+		int[] updates = new int[1];
+		vehicle.addNotificationListener((PositionUpdateListener) update -> updates[0]++);
+		vehicle.dispatchValueNotification(POSITION_UPDATE);
+		Assert.assertEquals(1, updates[0]);
+		Assert.assertEquals(2, vehicle.metrics.getSkippedNotifications());
+	}
+
+	@Test
+	public void handlersGetMessagesWithoutParsing() {
+		Vehicle vehicle = new Vehicle(0x0B0000000004L, Optional.empty(), null);
+		int[] calls = new int[2];
+		vehicle.addNotificationHandler(new NotificationHandler() {
+
+			@Override
+			public void onTransitionUpdate(int roadPieceIndex, int previousRoadPieceIndex) {
+				calls[0]++;
+			}
+
+			@Override
+			public void onOther(byte msgId, byte[] bytes, int offset) {
+				calls[1]++;
+			}
+		});
+		vehicle.dispatchValueNotification(new byte[] {3, 0x29, 1, 0}); // parse would fail, decode does not
+		vehicle.dispatchValueNotification(new byte[] {3, 0x4D, 0, 0});
+		Assert.assertArrayEquals(new int[] {1, 1}, calls);
+		Assert.assertEquals(0, vehicle.metrics.getParseErrors());
+		Assert.assertEquals(0, vehicle.metrics.getSkippedNotifications());
+	}
+
+	@Test
+	public void recordsPingRoundTrip() {
+		Vehicle vehicle = new Vehicle(0x0B0000000002L, Optional.empty(), null);
+		vehicle.ping();
+		vehicle.ping();
+		vehicle.dispatchValueNotification(new byte[] {1, 0x17});
+		vehicle.dispatchValueNotification(new byte[] {1, 0x17}); // unsolicited, ignored
+		Assert.assertEquals(2, vehicle.metrics.getPingsSent());
+		Assert.assertEquals(1, vehicle.metrics.getPingsLost());
+		Assert.assertEquals(1, vehicle.metrics.pingRoundTrip.getCount());
+		Assert.assertTrue(vehicle.getRoundTripTime(50) > 0);
+	}
+
+}
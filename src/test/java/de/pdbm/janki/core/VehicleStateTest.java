@@ -0,0 +1,91 @@
+package de.pdbm.janki.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.simulation.SimulatedTransport;
+import de.pdbm.janki.simulation.SimulatedVehicle;
+
+public class VehicleStateTest {
+
+	@Test
+	public void detachedVehicleIsReady() {
+		Vehicle vehicle = new Vehicle(0x0F0000000001L, Optional.empty(), null);
+		Assert.assertEquals(VehicleState.READY, vehicle.getState());
+		Assert.assertTrue(vehicle.isConnected());
+		Assert.assertTrue(vehicle.isReadyToStart());
+	}
+
+	@Test
+	public void transitions() {
+		Vehicle vehicle = new Vehicle(0x0F0000000002L, Optional.empty(), new SimulatedVehicle(0x0F0000000002L, SimulatedTransport.OVAL, 0));
+		List<String> transitions = new CopyOnWriteArrayList<>();
+		vehicle.addStateListener((v, from, to) -> transitions.add(from + "->" + to));
+		Assert.assertEquals(VehicleState.DISCOVERED, vehicle.getState());
+
+		vehicle.connecting(true);
+		vehicle.onConnectedNotification(true);
+		vehicle.connecting(false);
+		vehicle.initialized();
+		vehicle.announced();
+		vehicle.dispatchValueNotification(new byte[] {5, 0x3f, 0, 1, 0, 0});
+		vehicle.dispatchValueNotification(new byte[] {5, 0x3f, 0, 0, 0, 0});
+		vehicle.disconnectRequested = true;
+		vehicle.onConnectedNotification(false);
+
+		Assert.assertEquals(List.of("DISCOVERED->CONNECTING", "CONNECTING->INITIALIZED", "INITIALIZED->READY", "READY->ON_CHARGER",
+				"ON_CHARGER->READY", "READY->DISCONNECTED"), transitions);
+		Assert.assertFalse(vehicle.isConnected());
+	}
+
+	@Test
+	public void reconnectedVehicleIsReadyAfterInitialization() {
+		Vehicle vehicle = new Vehicle(0x0F0000000005L, Optional.empty(), new SimulatedVehicle(0x0F0000000005L, SimulatedTransport.OVAL, 0));
+		vehicle.onConnectedNotification(true);
+		vehicle.initialized();
+		vehicle.announced();
+		List<String> transitions = new CopyOnWriteArrayList<>();
+		vehicle.addStateListener((v, from, to) -> transitions.add(from + "->" + to));
+
+		vehicle.onConnectedNotification(false); // lost, not requested
+		vehicle.connecting(true);
+		vehicle.onConnectedNotification(true);
+		vehicle.connecting(false);
+		CompletableFuture<Vehicle> ready = vehicle.whenState(VehicleState.READY);
+		Assert.assertEquals(VehicleState.CONNECTING, vehicle.getState());
+		Assert.assertFalse(ready.isDone());
+		vehicle.initialized(); // by the reconnect manager after restore
+
+		Assert.assertTrue(ready.isDone());
+		Assert.assertEquals(List.of("READY->DISCONNECTED", "DISCONNECTED->CONNECTING", "CONNECTING->READY"), transitions);
+	}
+
+	@Test
+	public void whenStateCompletesOnTransition() {
+		Vehicle vehicle = new Vehicle(0x0F0000000003L, Optional.empty(), new SimulatedVehicle(0x0F0000000003L, SimulatedTransport.OVAL, 0));
+		CompletableFuture<Vehicle> ready = vehicle.whenState(VehicleState.READY);
+		vehicle.onConnectedNotification(true);
+		Assert.assertFalse(ready.isDone());
+		vehicle.announced();
+		Assert.assertSame(vehicle, ready.getNow(null));
+		Assert.assertTrue(vehicle.whenState(VehicleState.READY).isDone());
+	}
+
+	@Test
+	public void awaitStateTimesOut() throws InterruptedException {
+		Vehicle vehicle = new Vehicle(0x0F0000000004L, Optional.empty(), new SimulatedVehicle(0x0F0000000004L, SimulatedTransport.OVAL, 0));
+		Assert.assertFalse(vehicle.awaitState(VehicleState.READY, Duration.ofMillis(50)));
+		new Thread(() -> {
+			vehicle.onConnectedNotification(true);
+			vehicle.announced();
+		}).start();
+		Assert.assertTrue(vehicle.awaitState(VehicleState.READY, Duration.ofSeconds(5)));
+	}
+
+}
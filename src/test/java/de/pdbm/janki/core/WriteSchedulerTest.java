@@ -0,0 +1,65 @@
+package de.pdbm.janki.core;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriteSchedulerTest {
+
+	@Test
+	public void limitsRate() throws InterruptedException {
+		WriteScheduler scheduler = new WriteScheduler(200, 1);
+		Vehicle vehicle = new Vehicle(0x0A0000000001L, Optional.empty(), null);
+		long start = System.nanoTime();
+		for (int i = 0; i < 21; i++) {
+			scheduler.acquire(vehicle);
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		Assert.assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 90);
+		Assert.assertTrue(vehicle.metrics.getThrottledWrites() >= 19);
+		Assert.assertTrue(vehicle.metrics.getThrottleTimeMax() > 0);
+	}
+
+	@Test
+	public void sharesByWeight() throws InterruptedException {
+		WriteScheduler scheduler = new WriteScheduler(500, 1);
+		Vehicle heavy = new Vehicle(0x0A0000000002L, Optional.empty(), null);
+		Vehicle light = new Vehicle(0x0A0000000003L, Optional.empty(), null);
+		heavy.setWriteWeight(3);
+		List<Vehicle> grants = new CopyOnWriteArrayList<>();
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread[] writers = new Thread[2];
+		Vehicle[] vehicles = {heavy, light};
+		for (int i = 0; i < writers.length; i++) {
+			Vehicle vehicle = vehicles[i];
+			writers[i] = new Thread(() -> {
+				try {
+					while (running.get()) {
+						scheduler.acquire(vehicle);
+						grants.add(vehicle);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			writers[i].start();
+		}
+		Thread.sleep(300);
+		running.set(false);
+		for (Thread writer : writers) {
+			writer.interrupt();
+			writer.join(1000);
+		}
+
+		long heavyGrants = grants.stream().filter(heavy::equals).count();
+		long lightGrants = grants.stream().filter(light::equals).count();
+		Assert.assertTrue(heavyGrants + " : " + lightGrants, lightGrants > 10);
+		double ratio = (double) heavyGrants / lightGrants;
+		Assert.assertTrue("ratio " + ratio, ratio > 2 && ratio < 4);
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.pdbm.janki.core.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void appendAndRead() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (Journal journal = new Journal(directory, 4096)) {
+			journal.append(1, 0xE40A2C13315FL, new byte[] {1, 23});
+			journal.append(2, 0xC3A3A4B7A3E1L, new byte[] {3, 4, 5});
+		}
+		List<JournalRecord> records = new JournalReader(directory).stream().collect(Collectors.toList());
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals(1, records.get(0).getTimestamp());
+		Assert.assertEquals(0xE40A2C13315FL, records.get(0).getMac());
+		Assert.assertArrayEquals(new byte[] {1, 23}, records.get(0).getBytes());
+		Assert.assertArrayEquals(new byte[] {3, 4, 5}, records.get(1).getBytes());
+	}
+
+	@Test
+	public void skipsEmptyMessage() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (Journal journal = new Journal(directory, 4096)) {
+			journal.append(1, 42, new byte[] {1});
+			journal.append(2, 42, new byte[0]);
+			journal.append(3, 42, new byte[] {3});
+		}
+		long[] timestamps = new JournalReader(directory).stream().mapToLong(JournalRecord::getTimestamp).toArray();
+		Assert.assertArrayEquals(new long[] {1, 3}, timestamps);
+	}
+
+	@Test
+	public void rolloverKeepsOrder() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		byte[] message = new byte[17];
+		try (Journal journal = new Journal(directory, 1024)) {
+			for (int i = 0; i < 100; i++) {
+				journal.append(i, 42, message);
+			}
+			Assert.assertTrue("must have rolled over", journal.getSegmentIndex() > 0);
+		}
+		long[] timestamps = new JournalReader(directory).stream().mapToLong(JournalRecord::getTimestamp).toArray();
+		Assert.assertEquals(100, timestamps.length);
+		for (int i = 0; i < timestamps.length; i++) {
+			Assert.assertEquals(i, timestamps[i]);
+		}
+	}
+
+	@Test
+	public void secondRunContinuesNumbering() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (Journal journal = new Journal(directory, 4096)) {
+			journal.append(1, 42, new byte[] {1});
+		}
+		try (Journal journal = new Journal(directory, 4096)) {
+			Assert.assertEquals(1, journal.getSegmentIndex());
+			journal.append(2, 42, new byte[] {2});
+		}
+		List<JournalRecord> records = new JournalReader(directory).stream().collect(Collectors.toList());
+		Assert.assertEquals(2, records.size());
+		Assert.assertTrue("runs must differ", records.get(1).getRun() > records.get(0).getRun());
+	}
+
+}
@@ -0,0 +1,51 @@
+package de.pdbm.janki.core.notifications;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageEncoderTest {
+
+	@Test
+	public void speed() {
+		ByteBuffer buffer = MessageEncoder.buffer();
+		Assert.assertEquals(MessageEncoder.SPEED_SIZE, MessageEncoder.speed(buffer, (short) 100, (short) 1000));
+		Assert.assertArrayEquals(new byte[] {6, 36, 100, 0, -24, 3, 0}, bytes(buffer));
+	}
+
+	@Test
+	public void changeLaneIsLittleEndianInBigEndianBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MessageEncoder.MAX_SIZE).order(ByteOrder.BIG_ENDIAN);
+		MessageEncoder.changeLane(buffer, (short) 1000, (short) 1000, -68.0f);
+		Assert.assertArrayEquals(Message.changeLaneMessage((short) 1000, (short) 1000, -68.0f), bytes(buffer));
+		Assert.assertArrayEquals(new byte[] {11, 0x25, -24, 3, -24, 3, 0, 0, -120, -62, 0, 0}, bytes(buffer));
+	}
+
+	@Test
+	public void severalMessagesInOneBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		MessageEncoder.offsetFromRoadCenter(buffer, 0.0f);
+		MessageEncoder.sdkMode(buffer);
+		MessageEncoder.disconnect(buffer);
+		MessageEncoder.ping(buffer);
+		Assert.assertArrayEquals(new byte[] {5, 0x2c, 0, 0, 0, 0, 3, -112, 1, 1, 1, 0x0d, 1, 0x16}, bytes(buffer));
+	}
+
+	@Test
+	public void cachedMessagesAreReadOnly() {
+		Assert.assertTrue(MessageEncoder.sdkModeMessage().isReadOnly());
+		Assert.assertEquals(ByteBuffer.wrap(Message.getSdkMode()), MessageEncoder.sdkModeMessage());
+		Assert.assertEquals(ByteBuffer.wrap(Message.disconnectMessage()), MessageEncoder.disconnectMessage());
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		ByteBuffer flipped = buffer.duplicate();
+		flipped.flip();
+		byte[] bytes = new byte[flipped.remaining()];
+		flipped.get(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.pdbm.janki.core.notifications;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import de.pdbm.janki.core.RoadPiece;
+
+/**
+ * Checks that decoding position updates does not allocate, using the thread allocation counter of HotSpot.
+ */
+public class NotificationDecodingAllocationTest {
+
+	private static final int DECODES = 100_000;
+
+	private final byte[] positionUpdate = new byte[] {16, NotificationParser.POSITION_UPDATE, 1, 36, 0, 0, 0, 0, 0, 0, 71, 0, 0, 0, 0, 0, 0};
+
+	private final CountingHandler handler = new CountingHandler();
+
+	@Test
+	public void decodePositionUpdateFromArray() {
+		com.sun.management.ThreadMXBean threadBean = threadBean();
+		decodeArray(DECODES); // warm up
+		long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+		decodeArray(DECODES);
+		long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId()) - before;
+		Assert.assertEquals(2 * DECODES, handler.positionUpdates);
+		Assert.assertTrue("allocated " + allocated + " bytes for " + DECODES + " decodes", allocated < DECODES);
+	}
+
+	@Test
+	public void decodePositionUpdateFromDirectBuffer() {
+		com.sun.management.ThreadMXBean threadBean = threadBean();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(positionUpdate.length);
+		buffer.put(positionUpdate).flip();
+		decodeBuffer(buffer, DECODES); // warm up
+		long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+		decodeBuffer(buffer, DECODES);
+		long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId()) - before;
+		Assert.assertTrue("allocated " + allocated + " bytes for " + DECODES + " decodes", allocated < DECODES);
+	}
+
+	private void decodeArray(int count) {
+		for (int i = 0; i < count; i++) {
+			NotificationParser.decode(positionUpdate, 0, handler);
+		}
+	}
+
+	private void decodeBuffer(ByteBuffer buffer, int count) {
+		for (int i = 0; i < count; i++) {
+			NotificationParser.decode(buffer, handler);
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+		return threadBean;
+	}
+
+	private static final class CountingHandler implements NotificationHandler {
+
+		private int positionUpdates;
+
+		@Override
+		public void onPositionUpdate(int location, int roadPieceId, RoadPiece roadPiece, boolean ascendingLocations) {
+			if (roadPiece == RoadPiece.STRAIGHT && location == 1 && !ascendingLocations) {
+				positionUpdates++;
+			}
+		}
+	}
+
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import de.pdbm.janki.core.notifications.Notification;
 import de.pdbm.janki.core.notifications.NotificationParser;
+import de.pdbm.janki.core.notifications.PingResponse;
 import de.pdbm.janki.core.notifications.PositionUpdate;
 import de.pdbm.janki.core.notifications.TransitionUpdate;
 
@@ -18,6 +19,12 @@ public class NotificationParserTest {
 	}
 
 	
+	@Test
+	public void pingResponse() {
+		Notification notification = NotificationParser.parse(null, new byte[] {1, NotificationParser.PING_RESPONSE});
+		Assert.assertTrue("Must be PingResponse", notification instanceof PingResponse);
+	}
+
 	@Test(expected = RuntimeException.class)
 	public void transitionUpdateFailed() {
 		NotificationParser.parse(null, new byte[] {0, NotificationParser.TRANSITION_UPDATE, 1, 1});
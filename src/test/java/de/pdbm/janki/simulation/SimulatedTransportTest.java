@@ -0,0 +1,74 @@
+package de.pdbm.janki.simulation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pdbm.janki.core.RoadPiece;
+import de.pdbm.janki.core.notifications.Message;
+import de.pdbm.janki.core.notifications.Notification;
+import de.pdbm.janki.core.notifications.NotificationParser;
+import de.pdbm.janki.core.notifications.PingResponse;
+import de.pdbm.janki.core.notifications.PositionUpdate;
+import de.pdbm.janki.core.notifications.TransitionUpdate;
+
+public class SimulatedTransportTest {
+
+	@Test
+	public void drivesAlongLayout() {
+		SimulatedTransport transport = new SimulatedTransport(1, SimulatedTransport.OVAL);
+		SimulatedVehicle vehicle = transport.getVehicles().get(0);
+		List<Notification> notifications = new ArrayList<>();
+		vehicle.valueNotifications = bytes -> notifications.add(NotificationParser.parse(null, bytes));
+
+		vehicle.write(Message.speedMessage((short) 500));
+		transport.advance(Duration.ofSeconds(10));
+
+		Assert.assertEquals(Duration.ofSeconds(10), transport.getVirtualTime());
+		Assert.assertEquals(500, vehicle.getSpeed(), 0.001);
+		Assert.assertTrue("must have driven about 5 m", vehicle.getTransitions() >= 8);
+		Assert.assertTrue(notifications.get(0) instanceof TransitionUpdate);
+		PositionUpdate first = (PositionUpdate) notifications.get(1);
+		Assert.assertEquals(RoadPiece.STRAIGHT, first.getRoadPiece());
+		Assert.assertTrue(first.isAscendingLocations());
+		Assert.assertEquals(2 * vehicle.getTransitions(), notifications.size());
+	}
+
+	@Test
+	public void standsStillWithoutSpeed() {
+		SimulatedTransport transport = new SimulatedTransport(3, SimulatedTransport.OVAL);
+		List<byte[]> notifications = new ArrayList<>();
+		transport.getVehicles().forEach(vehicle -> vehicle.valueNotifications = notifications::add);
+		transport.advance(Duration.ofSeconds(1));
+		Assert.assertTrue(notifications.isEmpty());
+	}
+
+	@Test
+	public void disconnect() {
+		SimulatedTransport transport = new SimulatedTransport(1, SimulatedTransport.OVAL);
+		SimulatedVehicle vehicle = transport.getVehicles().get(0);
+		List<Boolean> connected = new ArrayList<>();
+		vehicle.connectedNotifications = connected::add;
+		vehicle.write(Message.disconnectMessage());
+		transport.advance(Duration.ofMillis(10));
+		Assert.assertFalse(vehicle.isConnected());
+		Assert.assertEquals(List.of(false), connected);
+	}
+
+	@Test
+	public void answersPing() {
+		SimulatedTransport transport = new SimulatedTransport(1, SimulatedTransport.OVAL);
+		SimulatedVehicle vehicle = transport.getVehicles().get(0);
+		List<Notification> notifications = new ArrayList<>();
+		vehicle.valueNotifications = bytes -> notifications.add(NotificationParser.parse(null, bytes));
+		vehicle.write(Message.pingMessage());
+		Assert.assertTrue("response is sent by the simulation thread", notifications.isEmpty());
+		transport.advance(Duration.ofMillis(10));
+		Assert.assertEquals(1, notifications.size());
+		Assert.assertTrue(notifications.get(0) instanceof PingResponse);
+	}
+
+}